@@ -0,0 +1,103 @@
+package sim.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sim.tetris.Block;
+import sim.tetris.BoardEvaluator;
+import sim.tetris.ColumnBoardEvaluator;
+import sim.tetris.InputMap;
+import sim.tetris.Level;
+import sim.tetris.Move;
+import sim.tetris.ScanningBoardEvaluator;
+import sim.tetris.TabuTetrisAgent;
+
+/**
+ * Benchmarks of the move search of TabuTetrisAgent on the mid game board:
+ * the allocation free search used by the game, the original search that
+ * builds a Move for every placement, the lookahead with the next block, and
+ * the evaluation of a board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AgentBenchmark {
+
+	private Level midGame;
+	private Block block;
+	private Block next;
+	private TabuTetrisAgent agent;
+	private TabuTetrisAgent lookaheadAgent;
+	private double[] weights;
+	private ArrayList<Move> moves;
+	private BoardEvaluator columnEvaluator;
+	private BoardEvaluator scanningEvaluator;
+
+	@Setup
+	public void setup() {
+		midGame = Fixtures.midGameLevel();
+		block = new Block(Block.SHAPE_T);
+		next = new Block(Block.SHAPE_L);
+
+		// without a cache, so that every candidate is evaluated
+		agent = new TabuTetrisAgent(new InputMap(), Fixtures.CONFIG);
+		agent.setEvaluationCache(0);
+		weights = agent.getWeights();
+		lookaheadAgent = new TabuTetrisAgent(new InputMap(), Fixtures.CONFIG);
+		lookaheadAgent.setEvaluationCache(0);
+		lookaheadAgent.setLookahead(4);
+		moves = agent.createAllMoves(midGame, block, next);
+		columnEvaluator = new ColumnBoardEvaluator();
+		scanningEvaluator = new ScanningBoardEvaluator();
+	}
+
+	@Benchmark
+	public int generateMoves() {
+		agent.generateMoves(midGame, block);
+		return agent.getBestMoveIndex();
+	}
+
+	@Benchmark
+	public ArrayList<Move> createAllMoves() {
+		return agent.createAllMoves(midGame, block, next);
+	}
+
+	@Benchmark
+	public double getEvaluation() {
+		double best = Double.NEGATIVE_INFINITY;
+		for (Move move : moves) {
+			best = Math.max(best, move.getEvaluation(columnEvaluator, weights));
+		}
+		return best;
+	}
+
+	@Benchmark
+	public double columnEvaluator() {
+		return columnEvaluator.evaluate(midGame, weights);
+	}
+
+	@Benchmark
+	public double scanningEvaluator() {
+		return scanningEvaluator.evaluate(midGame, weights);
+	}
+
+	@Benchmark
+	public int lookahead() {
+		lookaheadAgent.generateMoves(midGame, block);
+		return lookaheadAgent.getBestLookaheadMoveIndex(midGame, block, next);
+	}
+}
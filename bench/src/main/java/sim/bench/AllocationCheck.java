@@ -0,0 +1,183 @@
+package sim.bench;
+
+import java.lang.management.ManagementFactory;
+
+import sim.tetris.BatchBoardEvaluator;
+import sim.tetris.Game;
+import sim.tetris.GameScene;
+import sim.tetris.InputMap;
+import sim.tetris.Player;
+import sim.tetris.TabuTetrisAgent;
+
+/**
+ * Checks that steady state play allocates nothing per block.  Each case
+ * warms up a headless game, then counts the bytes allocated by this thread
+ * over further blocks with ThreadMXBean.getThreadAllocatedBytes, and fails
+ * if any were allocated.  Windows of blocks in which the game ended are
+ * played again on a new game, since starting a game allocates.
+ *
+ * <p>Usage: java -cp target/benchmarks.jar sim.bench.AllocationCheck
+ * [blocks]
+ *
+ * <p>Exits with status 1 if a case allocated.
+ */
+public class AllocationCheck {
+
+	/** the number of blocks played before counting */
+	private static final int WARMUP = 20000;
+
+	/** the number of blocks counted in one window */
+	private static final int WINDOW = 1000;
+
+	/**
+	 * A way of playing blocks.
+	 */
+	private static abstract class Case {
+
+		final String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		/** starts a new game */
+		abstract void start(int seed);
+
+		/** plays a block, and returns false if the game ended */
+		abstract boolean playBlock();
+	}
+
+	/**
+	 * Plays with Game.playBlock.
+	 */
+	private static class GameCase extends Case {
+
+		private final Game game;
+
+		GameCase(String name, boolean direct, int lookahead) {
+			super(name);
+			game = new Game(0, Fixtures.CONFIG);
+			game.setHeadless(true);
+			game.setDirectPlacement(direct);
+			game.setLookahead(lookahead);
+		}
+
+		void start(int seed) {
+			game.reset(seed, Fixtures.CONFIG);
+		}
+
+		boolean playBlock() {
+			return game.playBlock();
+		}
+	}
+
+	/**
+	 * Plays with GameScene.updateBlock and an agent that evaluates its moves
+	 * with a batch.
+	 */
+	private static class BatchCase extends Case {
+
+		private final InputMap input = new InputMap();
+		private final TabuTetrisAgent agent = new TabuTetrisAgent(input, Fixtures.CONFIG);
+		private final GameScene scene;
+
+		BatchCase(String name) {
+			super(name);
+			agent.setBatchEvaluator(new BatchBoardEvaluator(TabuTetrisAgent.MAX_MOVES));
+			scene = new GameScene(0, new Player(), agent);
+		}
+
+		void start(int seed) {
+			input.clear();
+			scene.reset(seed);
+		}
+
+		boolean playBlock() {
+			int pieces = scene.getPieces();
+			while (scene.getPieces() == pieces && !scene.isDead()) {
+				scene.updateBlock(input);
+			}
+			return !scene.isDead();
+		}
+	}
+
+	public static void main(String[] args) {
+		int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.err.println("Thread allocation counting is not supported by this JVM");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Case[] cases = {
+			new GameCase("key presses", false, 0),
+			new GameCase("direct placement", true, 0),
+			new GameCase("direct placement, lookahead 4", true, 4),
+			new BatchCase("batch evaluator")
+		};
+
+		boolean failed = false;
+		for (Case c : cases) {
+			long allocated = count(c, threads, blocks);
+			System.out.println(c.name + ": " + allocated + " bytes in " + blocks + " blocks");
+			failed |= allocated != 0;
+		}
+
+		if (failed) {
+			System.out.println("FAILED: steady state play allocated");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Warms up a case, then counts the bytes it allocates.
+	 *
+	 * @return - the bytes allocated by the counted blocks
+	 */
+	private static long count(Case c, com.sun.management.ThreadMXBean threads, int blocks) {
+		long thread = Thread.currentThread().getId();
+		int seed = 1;
+
+		c.start(seed);
+		for (int i=0; i<WARMUP; i++) {
+			if (!c.playBlock()) {
+				c.start(++seed);
+			}
+		}
+
+		// the bytes allocated by reading the counter itself
+		long overhead = Long.MAX_VALUE;
+		for (int i=0; i<10; i++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			overhead = Math.min(overhead, threads.getThreadAllocatedBytes(thread) - before);
+		}
+
+		long allocated = 0;
+		int counted = 0;
+		int restarts = 0;
+		while (counted < blocks) {
+			int window = Math.min(WINDOW, blocks - counted);
+			boolean alive = true;
+
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i=0; i<window && alive; i++) {
+				alive = c.playBlock();
+			}
+			long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+			// a window in which the game ended is played again on a new game
+			if (!alive) {
+				if (++restarts > 100) {
+					throw new IllegalStateException(c.name + ": the games are too short to count " + window + " blocks");
+				}
+				c.start(++seed);
+				continue;
+			}
+			allocated += bytes;
+			counted += window;
+		}
+		return allocated;
+	}
+}
@@ -0,0 +1,149 @@
+package sim.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sim.tetris.BatchBoardEvaluator;
+import sim.tetris.Block;
+import sim.tetris.ColumnBoardEvaluator;
+import sim.tetris.InputMap;
+import sim.tetris.Level;
+import sim.tetris.Move;
+import sim.tetris.TabuTetrisAgent;
+
+/**
+ * Benchmarks of the batch evaluation of the levels of every move of a block
+ * on the mid game board, against evaluating them one at a time.  Each
+ * operation scores the 44 levels of a block and picks the best.  The score
+ * benchmark only runs the arithmetic of the heuristic on levels added in
+ * setup, which is the part that VectorBatchBenchmark does with vector
+ * instructions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchBenchmark {
+
+	/** the levels after each move, before the completed lines are cleared */
+	private Level[] levels;
+	private Level scratch;
+	private double[] weights;
+	private double[] evaluations;
+	private ColumnBoardEvaluator columnEvaluator;
+
+	/** the batch that levels are added to in each operation */
+	private BatchBoardEvaluator batch;
+
+	/** a batch holding every level, added once */
+	private BatchBoardEvaluator filled;
+
+	/** an agent that evaluates its moves with a batch, without a cache */
+	private TabuTetrisAgent agent;
+
+	private Level midGame;
+	private Block block;
+
+	@Setup
+	public void setup() {
+		midGame = Fixtures.midGameLevel();
+		block = new Block(Block.SHAPE_T);
+
+		agent = new TabuTetrisAgent(new InputMap(), Fixtures.CONFIG);
+		agent.setEvaluationCache(0);
+		agent.setBatchEvaluator(createBatch(TabuTetrisAgent.MAX_MOVES));
+		weights = agent.getWeights();
+
+		ArrayList<Move> moves = agent.createAllMoves(midGame, block, new Block(Block.SHAPE_L));
+		levels = new Level[moves.size()];
+		for (int i=0; i<levels.length; i++) {
+			levels[i] = moves.get(i).getLevel();
+		}
+
+		scratch = new Level();
+		evaluations = new double[TabuTetrisAgent.MAX_MOVES];
+		columnEvaluator = new ColumnBoardEvaluator();
+		batch = createBatch(TabuTetrisAgent.MAX_MOVES);
+		filled = createBatch(TabuTetrisAgent.MAX_MOVES);
+		for (Level level : levels) {
+			scratch.copyFrom(level);
+			filled.add(scratch);
+		}
+	}
+
+	/**
+	 * Creates the batch evaluator that is benchmarked.
+	 *
+	 * @param capacity - the number of levels of the batch
+	 */
+	protected BatchBoardEvaluator createBatch(int capacity) {
+		return new BatchBoardEvaluator(capacity);
+	}
+
+	@Benchmark
+	public int evaluateEach() {
+		int best = -1;
+		double fitness = -1 * Double.MAX_VALUE;
+		for (int i=0; i<levels.length; i++) {
+			scratch.copyFrom(levels[i]);
+			double evaluation = columnEvaluator.evaluate(scratch, weights);
+			if (evaluation >= fitness) {
+				best = i;
+				fitness = evaluation;
+			}
+		}
+		return best;
+	}
+
+	@Benchmark
+	public int evaluateBatch() {
+		batch.clear();
+		for (Level level : levels) {
+			scratch.copyFrom(level);
+			batch.add(scratch);
+		}
+		batch.evaluate(weights, evaluations);
+		return best(levels.length);
+	}
+
+	@Benchmark
+	public int score() {
+		filled.evaluate(weights, evaluations);
+		return best(levels.length);
+	}
+
+	@Benchmark
+	public int generateMoves() {
+		agent.generateMoves(midGame, block);
+		return agent.getBestMoveIndex();
+	}
+
+	/**
+	 * Gets the index of the best evaluation, preferring later levels on ties
+	 * like the agent.
+	 */
+	private int best(int count) {
+		int best = -1;
+		double fitness = -1 * Double.MAX_VALUE;
+		for (int i=0; i<count; i++) {
+			if (evaluations[i] >= fitness) {
+				best = i;
+				fitness = evaluations[i];
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,36 @@
+package sim.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which adds the bytes allocated
+ * per operation to every result, and writes the results as JSON so that 
+ * runs of different commits can be diffed.
+ *
+ * <p>Usage: java -jar benchmarks.jar [regex] [result file]
+ *
+ * <p>The regex picks the benchmarks to run, all of them by default, and the
+ * results are written to jmh-result.json by default.  The standard JMH 
+ * command line is available with org.openjdk.jmh.Main, for example with 
+ * "-prof gc -rf json".
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : "sim.bench.*";
+		String result = args.length > 1 ? args[1] : "jmh-result.json";
+
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(result)
+				.build();
+		new Runner(options).run();
+	}
+}
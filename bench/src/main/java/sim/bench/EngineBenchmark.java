@@ -0,0 +1,118 @@
+package sim.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sim.tetris.Block;
+import sim.tetris.Level;
+
+/**
+ * Benchmarks of the level and block operations that the agent and the game
+ * call for every candidate move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+	/** the number of blocks in allBlocks */
+	private static final int BLOCKS = 28;
+
+	private Level midGame;
+	private Level completedLines;
+	private Level scratch;
+
+	/** every type and rotation at the spawn row */
+	private Block[] spawned;
+
+	/** every type and rotation at its landing row on the mid game board */
+	private Block[] landed;
+
+	private Block rotating;
+
+	@Setup
+	public void setup() {
+		midGame = Fixtures.midGameLevel();
+		completedLines = Fixtures.completedLinesLevel();
+		scratch = new Level();
+		spawned = Fixtures.allBlocks();
+		landed = Fixtures.allBlocks();
+		for (Block block : landed) {
+			Fixtures.drop(midGame, block);
+		}
+		rotating = new Block(Block.SHAPE_T);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCKS)
+	public int collision() {
+		int collisions = 0;
+		for (Block block : landed) {
+			if (midGame.collision(block)) {
+				collisions++;
+			}
+		}
+		return collisions;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCKS)
+	public int dropToLanding() {
+		int rows = 0;
+		for (Block block : spawned) {
+			int y = block.getY();
+			Fixtures.drop(midGame, block);
+			rows += block.getY();
+			block.setY(y);
+		}
+		return rows;
+	}
+
+	@Benchmark
+	public Level copyFrom() {
+		scratch.copyFrom(midGame);
+		return scratch;
+	}
+
+	@Benchmark
+	public boolean addBlockToLevel() {
+		scratch.copyFrom(midGame);
+		return scratch.addBlockToLevel(landed[17], true);
+	}
+
+	@Benchmark
+	public int clearLinesMask() {
+		scratch.copyFrom(completedLines);
+		return scratch.clearLines(scratch.getClearedLineMask());
+	}
+
+	@Benchmark
+	@SuppressWarnings("rawtypes")
+	public Level clearLinesList() {
+		scratch.copyFrom(completedLines);
+		ArrayList lines = scratch.getClearedLines();
+		scratch.clearLines(lines);
+		return scratch;
+	}
+
+	@Benchmark
+	public int rotateCW() {
+		rotating.rotateCW();
+		return rotating.getRotation();
+	}
+}
@@ -0,0 +1,116 @@
+package sim.bench;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.Block;
+import sim.tetris.InputMap;
+import sim.tetris.Level;
+import sim.tetris.Player;
+import sim.tetris.GameScene;
+import sim.tetris.TabuTetrisAgent;
+import sim.tetris.TetrisAgent;
+
+/**
+ * Fixed boards and blocks for the benchmarks, built the same way in every
+ * run so that results can be compared between commits.
+ */
+public class Fixtures {
+
+	/** the factors of the agent of every benchmark */
+	public static final AgentConfig CONFIG = new AgentConfig(1, 1, 12, 1, 1);
+
+	/** the seed of the game the mid game board is taken from */
+	public static final int BOARD_SEED = 4;
+
+	/** the number of blocks played on the mid game board */
+	public static final int BOARD_PIECES = 400;
+
+	/**
+	 * Gets the board of a game after a number of blocks have been played by
+	 * an agent with CONFIG.
+	 *
+	 * @param seed - the random seed of the game
+	 * @param pieces - the number of blocks to play
+	 * @return - a copy of the board
+	 */
+	public static Level playedLevel(int seed, int pieces) {
+		final InputMap input = new InputMap();
+		final TabuTetrisAgent agent = new TabuTetrisAgent(input, CONFIG);
+		final Level[] board = new Level[1];
+
+		// remember the level that the scene passes to the agent
+		TetrisAgent recorder = new TetrisAgent() {
+			public void newBlock(Block block, Block next, Level level) {
+				board[0] = level;
+				agent.newBlock(block, next, level);
+			}
+
+			public void blockDropped(Block block) {
+				agent.blockDropped(block);
+			}
+		};
+
+		GameScene scene = new GameScene(seed, new Player(), recorder);
+		while (scene.getPieces() < pieces && !scene.isDead()) {
+			scene.updateBlock(input);
+		}
+		return board[0].copy();
+	}
+
+	/**
+	 * Gets the mid game board.
+	 */
+	public static Level midGameLevel() {
+		return playedLevel(BOARD_SEED, BOARD_PIECES);
+	}
+
+	/**
+	 * Gets a board with two completed lines at the bottom, made of squares,
+	 * and a few blocks above them.
+	 */
+	public static Level completedLinesLevel() {
+		Level level = new Level();
+		for (int x=0; x<Level.LEVEL_WIDTH; x+=2) {
+			add(level, Block.SHAPE_SQUARE, 0, x, 19);
+		}
+		add(level, Block.SHAPE_T, 2, 0, 16);
+		add(level, Block.SHAPE_LINE, 0, 3, 15);
+		add(level, Block.SHAPE_S, 0, 7, 17);
+		return level;
+	}
+
+	/**
+	 * Gets one block of every type and rotation, above the mid game board
+	 * at the spawn column.
+	 */
+	public static Block[] allBlocks() {
+		Block[] blocks = new Block[Block.NUM_BLOCKS*Block.MAX_ROTATIONS];
+		for (int type=0; type<Block.NUM_BLOCKS; type++) {
+			for (int r=0; r<Block.MAX_ROTATIONS; r++) {
+				Block block = new Block(type);
+				block.setRotation(r % Block.getNumRotations(type));
+				blocks[type*Block.MAX_ROTATIONS + r] = block;
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Drops a block until it collides with the level.
+	 *
+	 * @param level - the level
+	 * @param block - the block to drop, moved to the landing row
+	 */
+	public static void drop(Level level, Block block) {
+		while (!level.collision(block)) {
+			block.drop();
+		}
+	}
+
+	private static void add(Level level, int type, int rotation, int x, int y) {
+		Block block = new Block(type);
+		block.setRotation(rotation);
+		block.setX(x);
+		block.setY(y);
+		level.addBlockToLevel(block, false);
+	}
+}
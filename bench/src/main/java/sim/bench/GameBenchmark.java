@@ -0,0 +1,56 @@
+package sim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sim.tetris.Game;
+import sim.tetris.GameBudget;
+
+/**
+ * Benchmarks a whole game on fixed seeds.  Games are capped at a number of
+ * blocks, so that the time of an iteration does not depend on how long the
+ * agent survives.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmark {
+
+	@Param({"1", "4", "7"})
+	public int seed;
+
+	@Param({"2000"})
+	public int pieces;
+
+	@Param({"true", "false"})
+	public boolean headless;
+
+	private Game game;
+
+	@Setup
+	public void setup() {
+		game = new Game(seed, Fixtures.CONFIG);
+		game.setHeadless(headless);
+		game.setBudget(new GameBudget(pieces, 0, 0));
+	}
+
+	@Benchmark
+	public int runSimulation() {
+		game.reset(seed, Fixtures.CONFIG);
+		return game.runSimulation();
+	}
+}
@@ -0,0 +1,18 @@
+package sim.bench;
+
+import org.openjdk.jmh.annotations.Fork;
+
+import sim.tetris.BatchBoardEvaluator;
+
+/**
+ * The benchmarks of BatchBenchmark with the vector API evaluator.  Built by
+ * the vector profile, which is active on Java 17 or later.
+ */
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorBatchBenchmark extends BatchBenchmark {
+
+	@Override
+	protected BatchBoardEvaluator createBatch(int capacity) {
+		return new VectorBatchBoardEvaluator(capacity);
+	}
+}
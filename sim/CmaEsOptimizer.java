@@ -0,0 +1,599 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.GameBudget;
+import sim.tetris.GameResult;
+
+/**
+ * Searches the factors of the agent with CMA-ES, the covariance matrix
+ * adaptation evolution strategy.  Each generation samples a population of
+ * configs around the mean of the search, plays every config on the same
+ * seeds, and moves the mean and the shape of the distribution towards the
+ * configs that cleared the most lines.
+ *
+ * <p>The search runs in factors divided by the starting factors, so that a
+ * step size of 0.3 changes every factor by about 30% at first.  The
+ * population of a generation is sampled from the seed of the optimizer and
+ * the generation, and the state is written after every generation, so that
+ * a search that was stopped can be continued from its checkpoint with the
+ * same results.
+ *
+ * <p>Usage: CmaEsOptimizer [--start=factors] [--sigma=S] [--population=L]
+ * [--generations=G] [--targetLines=T] [--seeds=N] [--firstSeed=F]
+ * [--seedSet=name] [--threads=T] [--lookahead=K] [--maxPieces=P]
+ * [--maxLines=L] [--random=R] [--checkpoint=file]
+ *
+ * <p>Each generation is played on seeds that no earlier generation used,
+ * the next seeds of a range from firstSeed, or of the seed set given with
+ * --seedSet, see SeedSet.  The search stops after the given number of
+ * generations, when a generation's best config reaches the target lines per
+ * game, or when the step size is too small to change the games.
+ */
+public class CmaEsOptimizer {
+
+	/** the number of factors */
+	private static final int N = 5;
+
+	/** identifies a checkpoint file */
+	private static final int MAGIC = 0x54434D41;
+
+	/** the version of the checkpoint format */
+	private static final int VERSION = 1;
+
+	/** the search stops when the steps in every direction are below this */
+	public static final double MIN_STEP = 1e-4;
+
+	// the constants of the strategy, which only depend on the population
+	private final int population;
+	private final int parents;
+	private final double[] weights;
+	private final double mueff;
+	private final double cc;
+	private final double cs;
+	private final double c1;
+	private final double cmu;
+	private final double damps;
+	private final double chiN;
+
+	/** the seed of the samples */
+	private final long seed;
+
+	/** the factors that a point of the search is multiplied by */
+	private final double[] scale;
+
+	/** the number of generations that were updated */
+	private int generation = 0;
+
+	/** the number of games played */
+	private long games = 0;
+
+	/** the mean of the search, in scaled factors */
+	private final double[] mean = new double[N];
+
+	/** the step size */
+	private double sigma;
+
+	/** the covariance matrix */
+	private final double[][] covariance = new double[N][N];
+
+	/** the evolution path of the covariance matrix */
+	private final double[] pc = new double[N];
+
+	/** the evolution path of the step size */
+	private final double[] ps = new double[N];
+
+	/** the eigenvectors of the covariance matrix, as columns */
+	private final double[][] basis = new double[N][N];
+
+	/** the square roots of the eigenvalues of the covariance matrix */
+	private final double[] axes = new double[N];
+
+	/** the best config found, and the lines per game it cleared */
+	private AgentConfig best = null;
+	private double bestFitness = -Double.MAX_VALUE;
+
+	/**
+	 * Creates a search.
+	 *
+	 * @param start - the factors at the center of the first generation
+	 * @param sigma - the initial step size, relative to the start factors
+	 * @param population - the number of configs per generation, at least 4
+	 * @param seed - the seed of the samples
+	 */
+	public CmaEsOptimizer(AgentConfig start, double sigma, int population, long seed) {
+		if (population < 4) {
+			throw new IllegalArgumentException("The population must have at least 4 configs: " + population);
+		}
+
+		this.population = population;
+		this.sigma = sigma;
+		this.seed = seed;
+
+		// the start factors scale the search, so that it starts at 1
+		scale = start.toArray();
+		for (int i=0; i<N; i++) {
+			scale[i] = scale[i] != 0 ? Math.abs(scale[i]) : 1;
+			mean[i] = start.toArray()[i] / scale[i];
+			covariance[i][i] = 1;
+		}
+
+		// recombination weights of the best half of the population
+		parents = population / 2;
+		weights = new double[parents];
+		double sum = 0;
+		for (int i=0; i<parents; i++) {
+			weights[i] = Math.log(parents + 0.5) - Math.log(i + 1);
+			sum += weights[i];
+		}
+		double squares = 0;
+		for (int i=0; i<parents; i++) {
+			weights[i] /= sum;
+			squares += weights[i]*weights[i];
+		}
+		mueff = 1 / squares;
+
+		// learning rates, see Hansen, "The CMA Evolution Strategy: A Tutorial"
+		cc = (4 + mueff/N) / (N + 4 + 2*mueff/N);
+		cs = (mueff + 2) / (N + mueff + 5);
+		c1 = 2 / ((N + 1.3)*(N + 1.3) + mueff);
+		cmu = Math.min(1 - c1, 2*(mueff - 2 + 1/mueff) / ((N + 2)*(N + 2) + mueff));
+		damps = 1 + 2*Math.max(0, Math.sqrt((mueff - 1)/(N + 1)) - 1) + cs;
+		chiN = Math.sqrt(N)*(1 - 1.0/(4*N) + 1.0/(21*N*N));
+
+		decompose();
+	}
+
+	/**
+	 * Samples the configs of the next generation.  The samples only depend
+	 * on the state and the seed, so calling this again before update gives
+	 * the same configs.
+	 *
+	 * @return - the configs, as many as the population
+	 */
+	public List<AgentConfig> sample() {
+		Random random = new Random(seed*31 + generation);
+		List<AgentConfig> configs = new ArrayList<>(population);
+
+		for (int k=0; k<population; k++) {
+			double[] z = new double[N];
+			for (int i=0; i<N; i++) {
+				z[i] = axes[i]*random.nextGaussian();
+			}
+
+			double[] factors = new double[N];
+			for (int i=0; i<N; i++) {
+				double y = 0;
+				for (int j=0; j<N; j++) {
+					y += basis[i][j]*z[j];
+				}
+				factors[i] = (mean[i] + sigma*y)*scale[i];
+			}
+			configs.add(new AgentConfig(factors));
+		}
+
+		return configs;
+	}
+
+	/**
+	 * Moves the search towards the best configs of a generation.
+	 *
+	 * @param configs - the configs returned by sample
+	 * @param fitness - the lines per game of each config, higher is better
+	 * @param played - the number of games played to find the fitness
+	 */
+	public void update(List<AgentConfig> configs, double[] fitness, long played) {
+		games += played;
+
+		// rank the configs, best first
+		Integer[] order = new Integer[configs.size()];
+		for (int k=0; k<order.length; k++) {
+			order[k] = k;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+
+		if (fitness[order[0]] > bestFitness) {
+			bestFitness = fitness[order[0]];
+			best = configs.get(order[0]);
+		}
+
+		// the steps of the parents, in units of sigma
+		double[][] steps = new double[parents][N];
+		double[] step = new double[N];
+		for (int k=0; k<parents; k++) {
+			double[] factors = configs.get(order[k]).toArray();
+			for (int i=0; i<N; i++) {
+				steps[k][i] = (factors[i]/scale[i] - mean[i]) / sigma;
+				step[i] += weights[k]*steps[k][i];
+			}
+		}
+
+		// move the mean
+		for (int i=0; i<N; i++) {
+			mean[i] += sigma*step[i];
+		}
+
+		// the step size path uses the step whitened by the covariance matrix
+		double[] whitened = new double[N];
+		for (int j=0; j<N; j++) {
+			double dot = 0;
+			for (int i=0; i<N; i++) {
+				dot += basis[i][j]*step[i];
+			}
+			dot /= axes[j];
+			for (int i=0; i<N; i++) {
+				whitened[i] += basis[i][j]*dot;
+			}
+		}
+
+		double norm = 0;
+		for (int i=0; i<N; i++) {
+			ps[i] = (1 - cs)*ps[i] + Math.sqrt(cs*(2 - cs)*mueff)*whitened[i];
+			norm += ps[i]*ps[i];
+		}
+		norm = Math.sqrt(norm);
+
+		// stall the covariance path while the step size path is long
+		boolean hsig = norm / Math.sqrt(1 - Math.pow(1 - cs, 2*(generation + 1))) / chiN < 1.4 + 2.0/(N + 1);
+		for (int i=0; i<N; i++) {
+			pc[i] = (1 - cc)*pc[i] + (hsig ? Math.sqrt(cc*(2 - cc)*mueff)*step[i] : 0);
+		}
+
+		// rank one and rank mu updates of the covariance matrix
+		for (int i=0; i<N; i++) {
+			for (int j=0; j<N; j++) {
+				double rankMu = 0;
+				for (int k=0; k<parents; k++) {
+					rankMu += weights[k]*steps[k][i]*steps[k][j];
+				}
+				double rankOne = pc[i]*pc[j] + (hsig ? 0 : cc*(2 - cc)*covariance[i][j]);
+				covariance[i][j] = (1 - c1 - cmu)*covariance[i][j] + c1*rankOne + cmu*rankMu;
+			}
+		}
+
+		sigma *= Math.exp((cs/damps)*(norm/chiN - 1));
+		generation++;
+		decompose();
+	}
+
+	/**
+	 * Tells if the steps in every direction are too small to change the
+	 * games.
+	 */
+	public boolean isConverged() {
+		for (int i=0; i<N; i++) {
+			if (sigma*axes[i] > MIN_STEP) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public long getGames() {
+		return games;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * Gets the center of the search.
+	 */
+	public AgentConfig getMean() {
+		double[] factors = new double[N];
+		for (int i=0; i<N; i++) {
+			factors[i] = mean[i]*scale[i];
+		}
+		return new AgentConfig(factors);
+	}
+
+	/**
+	 * Gets the config with the most lines per game so far, or null before
+	 * the first update.  Generations are played on different seeds, so the
+	 * fitness of configs of different generations is compared on different
+	 * games.
+	 */
+	public AgentConfig getBest() {
+		return best;
+	}
+
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+	/**
+	 * Computes the eigenvectors and the axes of the covariance matrix with
+	 * the Jacobi method, which is exact enough for a 5x5 matrix.
+	 */
+	private void decompose() {
+		double[][] a = new double[N][N];
+		for (int i=0; i<N; i++) {
+			for (int j=0; j<N; j++) {
+
+				// keep the matrix symmetric against rounding
+				a[i][j] = (covariance[i][j] + covariance[j][i]) / 2;
+				basis[i][j] = i == j ? 1 : 0;
+			}
+		}
+
+		for (int sweep=0; sweep<50; sweep++) {
+			double off = 0;
+			for (int i=0; i<N; i++) {
+				for (int j=i+1; j<N; j++) {
+					off += a[i][j]*a[i][j];
+				}
+			}
+			if (off < 1e-30) {
+				break;
+			}
+
+			for (int p=0; p<N; p++) {
+				for (int q=p+1; q<N; q++) {
+					if (a[p][q] == 0) {
+						continue;
+					}
+
+					// rotate rows and columns p and q to zero a[p][q]
+					double theta = (a[q][q] - a[p][p]) / (2*a[p][q]);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta*theta + 1));
+					if (theta == 0) {
+						t = 1;
+					}
+					double c = 1 / Math.sqrt(t*t + 1);
+					double s = t*c;
+
+					for (int k=0; k<N; k++) {
+						double akp = a[k][p];
+						double akq = a[k][q];
+						a[k][p] = c*akp - s*akq;
+						a[k][q] = s*akp + c*akq;
+					}
+					for (int k=0; k<N; k++) {
+						double apk = a[p][k];
+						double aqk = a[q][k];
+						a[p][k] = c*apk - s*aqk;
+						a[q][k] = s*apk + c*aqk;
+					}
+					for (int k=0; k<N; k++) {
+						double bkp = basis[k][p];
+						double bkq = basis[k][q];
+						basis[k][p] = c*bkp - s*bkq;
+						basis[k][q] = s*bkp + c*bkq;
+					}
+				}
+			}
+		}
+
+		for (int i=0; i<N; i++) {
+			axes[i] = Math.sqrt(Math.max(a[i][i], 1e-20));
+		}
+	}
+
+	/**
+	 * Writes the state of the search.  The settings of the games are not
+	 * part of the state.
+	 *
+	 * @param out - the stream to write to
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeInt(population);
+		out.writeLong(seed);
+		out.writeInt(generation);
+		out.writeLong(games);
+		out.writeDouble(sigma);
+		for (int i=0; i<N; i++) {
+			out.writeDouble(scale[i]);
+			out.writeDouble(mean[i]);
+			out.writeDouble(pc[i]);
+			out.writeDouble(ps[i]);
+			for (int j=0; j<N; j++) {
+				out.writeDouble(covariance[i][j]);
+			}
+		}
+
+		out.writeBoolean(best != null);
+		if (best != null) {
+			out.writeDouble(bestFitness);
+			for (double factor : best.toArray()) {
+				out.writeDouble(factor);
+			}
+		}
+	}
+
+	/**
+	 * Reads a search written by writeTo.
+	 *
+	 * @param in - the stream to read from
+	 * @return - the search
+	 */
+	public static CmaEsOptimizer readFrom(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a CMA-ES checkpoint");
+		}
+		int version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported checkpoint version: " + version);
+		}
+
+		int population = in.readInt();
+		long seed = in.readLong();
+		CmaEsOptimizer optimizer = new CmaEsOptimizer(new AgentConfig(1, 1, 1, 1, 1), 1, population, seed);
+		optimizer.generation = in.readInt();
+		optimizer.games = in.readLong();
+		optimizer.sigma = in.readDouble();
+		for (int i=0; i<N; i++) {
+			optimizer.scale[i] = in.readDouble();
+			optimizer.mean[i] = in.readDouble();
+			optimizer.pc[i] = in.readDouble();
+			optimizer.ps[i] = in.readDouble();
+			for (int j=0; j<N; j++) {
+				optimizer.covariance[i][j] = in.readDouble();
+			}
+		}
+
+		if (in.readBoolean()) {
+			optimizer.bestFitness = in.readDouble();
+			double[] factors = new double[N];
+			for (int i=0; i<N; i++) {
+				factors[i] = in.readDouble();
+			}
+			optimizer.best = new AgentConfig(factors);
+		}
+
+		optimizer.decompose();
+		return optimizer;
+	}
+
+	/**
+	 * Writes the state to a file, replacing it only once the new state is
+	 * completely written.
+	 *
+	 * @param path - the checkpoint file
+	 */
+	public void save(Path path) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			writeTo(out);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the state from a file written by save.
+	 *
+	 * @param path - the checkpoint file
+	 * @return - the search
+	 */
+	public static CmaEsOptimizer load(Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			return readFrom(in);
+		}
+	}
+
+	/**
+	 * Plays every config on every seed, in parallel.
+	 *
+	 * @param simulator - the simulator that plays the games
+	 * @param configs - the configs to evaluate
+	 * @param seeds - the seeds that every config is played on
+	 * @return - the mean lines per game of each config
+	 */
+	public static double[] evaluate(LocalSimulator simulator, List<AgentConfig> configs, int[] seeds) {
+		// the results hold a copy of their config, found by its factors
+		Map<AgentConfig, Integer> index = new HashMap<>();
+		for (int k=0; k<configs.size(); k++) {
+			index.put(configs.get(k), k);
+		}
+
+		double[] lines = new double[configs.size()];
+		simulator.run(configs, seeds, (GameResult result) -> {
+			synchronized (lines) {
+				lines[index.get(result.config)] += result.lines;
+			}
+		});
+
+		for (int k=0; k<lines.length; k++) {
+			lines[k] /= seeds.length;
+		}
+		return lines;
+	}
+
+	/**
+	 * Runs the search from the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		AgentConfig start = new AgentConfig(1, 1, 12, 1, 1);
+		double sigma = 0.3;
+		int population = 4 + (int)(3*Math.log(N));
+		int generations = 50;
+		double targetLines = Double.MAX_VALUE;
+		int numSeeds = 10;
+		int firstSeed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int lookahead = 0;
+		int maxPieces = 0;
+		int maxLines = 0;
+		long randomSeed = 0;
+		String checkpoint = null;
+		String seedSet = null;
+
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--start=")) start = AgentConfig.parse(value);
+			else if (arg.startsWith("--sigma=")) sigma = Double.parseDouble(value);
+			else if (arg.startsWith("--population=")) population = Integer.parseInt(value);
+			else if (arg.startsWith("--generations=")) generations = Integer.parseInt(value);
+			else if (arg.startsWith("--targetLines=")) targetLines = Double.parseDouble(value);
+			else if (arg.startsWith("--seeds=")) numSeeds = Integer.parseInt(value);
+			else if (arg.startsWith("--firstSeed=")) firstSeed = Integer.parseInt(value);
+			else if (arg.startsWith("--seedSet=")) seedSet = value;
+			else if (arg.startsWith("--threads=")) threads = Integer.parseInt(value);
+			else if (arg.startsWith("--lookahead=")) lookahead = Integer.parseInt(value);
+			else if (arg.startsWith("--maxPieces=")) maxPieces = Integer.parseInt(value);
+			else if (arg.startsWith("--maxLines=")) maxLines = Integer.parseInt(value);
+			else if (arg.startsWith("--random=")) randomSeed = Long.parseLong(value);
+			else if (arg.startsWith("--checkpoint=")) checkpoint = value;
+			else throw new IllegalArgumentException("Unknown argument: " + arg);
+		}
+
+		// continue from the checkpoint if there is one
+		Path path = checkpoint != null ? Paths.get(checkpoint) : null;
+		CmaEsOptimizer optimizer = path != null && Files.exists(path) ? load(path)
+				: new CmaEsOptimizer(start, sigma, population, randomSeed);
+
+		SeedSet seeds = seedSet != null ? SeedSet.parse(seedSet) : SeedSet.range(firstSeed);
+		LocalSimulator simulator = new LocalSimulator(threads);
+		simulator.setLookahead(lookahead);
+		simulator.setBudget(new GameBudget(maxPieces, maxLines, 0));
+
+		System.out.println("generation,games,bestLines,meanLines,sigma,mean,best");
+		try {
+			while (optimizer.getGeneration() < generations && !optimizer.isConverged()
+					&& optimizer.getBestFitness() < targetLines) {
+
+				// every config of a generation is played on the same seeds
+				List<AgentConfig> configs = optimizer.sample();
+				double[] fitness = evaluate(simulator, configs, seeds.getSeeds(optimizer.getGeneration()*numSeeds, numSeeds));
+				optimizer.update(configs, fitness, (long)configs.size()*numSeeds);
+				if (path != null) {
+					optimizer.save(path);
+				}
+
+				double top = -Double.MAX_VALUE;
+				double sum = 0;
+				for (double lines : fitness) {
+					top = Math.max(top, lines);
+					sum += lines;
+				}
+				System.out.println(optimizer.getGeneration() + "," + optimizer.getGames() + "," + top + ","
+						+ sum/fitness.length + "," + optimizer.getSigma() + ",\"" + optimizer.getMean() + "\",\""
+						+ optimizer.getBest() + "\"");
+			}
+		}
+		finally {
+			simulator.shutdown();
+		}
+	}
+}
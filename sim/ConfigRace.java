@@ -0,0 +1,325 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.GameBudget;
+import sim.tetris.GameResult;
+
+/**
+ * Races configs with successive halving, instead of playing every config on
+ * every seed.  All configs are played on a few seeds, the worst of them are
+ * dropped, and the number of seeds is doubled for the rest, until the
+ * shortlist is left or the seeds run out.
+ *
+ * <p>Every config is played on the same seeds, so configs are compared with
+ * a paired t-test on their lines per seed.  In each round, at most the
+ * bottom half of the configs are candidates to drop.  A candidate is only
+ * dropped if it cleared significantly fewer lines than the leader of the
+ * round, so that a config is not lost to a few unlucky seeds.
+ *
+ * <p>Usage: ConfigRace [--configs=file] [--grid=factors]
+ * [--randomConfigs=M] [--minSeeds=N] [--maxSeeds=N] [--firstSeed=S]
+ * [--seedSet=name] [--shortlist=K] [--eta=E] [--alpha=A] [--threads=T]
+ * [--lookahead=K] [--maxPieces=P] [--maxLines=L]
+ *
+ * <p>The ranking is printed as CSV, the shortlist first, then the dropped
+ * configs from the last round to the first.  The number of games and
+ * pieces played is printed to standard error.  The seeds are a range from
+ * firstSeed unless --seedSet is given, see SeedSet.
+ */
+public class ConfigRace {
+
+	/**
+	 * A config in the race, with its lines on each seed played so far.
+	 */
+	public static class Entry {
+
+		public final AgentConfig config;
+
+		/** the lines per seed, by the index of the seed in the set */
+		public final double[] lines;
+
+		/** the number of seeds played */
+		public int seeds = 0;
+
+		/** the number of blocks played in all games */
+		public long pieces = 0;
+
+		/** the round the config was dropped in, or -1 if it is on the shortlist */
+		public int dropped = -1;
+
+		Entry(AgentConfig config, int maxSeeds) {
+			this.config = config;
+			lines = new double[maxSeeds];
+		}
+
+		public double getMeanLines() {
+			return Statistics.mean(lines, seeds);
+		}
+
+		public double getStdDevLines() {
+			return Statistics.stdDev(lines, seeds);
+		}
+	}
+
+	/** the simulator that plays the games */
+	private final LocalSimulator simulator;
+
+	/** the number of seeds of the first round */
+	private int minSeeds = 2;
+
+	/** the largest number of seeds a config is played on */
+	private int maxSeeds = 64;
+
+	/** the seeds the configs are played on */
+	private SeedSet seedSet = SeedSet.range(0);
+
+	/** the race stops when this many configs are left */
+	private int shortlist = 1;
+
+	/** at most 1 - 1/eta of the configs are dropped in a round */
+	private double eta = 2;
+
+	/** the significance level of the one sided test that drops a config */
+	private double alpha = 0.05;
+
+	/** the number of rounds of the last race */
+	private int rounds = 0;
+
+	/**
+	 * Creates a race that plays its games on a simulator.
+	 *
+	 * @param simulator - the simulator, with its lookahead and budget set
+	 */
+	public ConfigRace(LocalSimulator simulator) {
+		this.simulator = simulator;
+	}
+
+	/**
+	 * Sets the number of seeds of the first and last rounds.  The seeds
+	 * double in every round.
+	 *
+	 * @param minSeeds - the seeds of the first round, at least 2
+	 * @param maxSeeds - the most seeds a config is played on
+	 */
+	public void setSeeds(int minSeeds, int maxSeeds) {
+		if (minSeeds < 2 || maxSeeds < minSeeds) {
+			throw new IllegalArgumentException("Expected 2 <= minSeeds <= maxSeeds: " + minSeeds + ", " + maxSeeds);
+		}
+		this.minSeeds = minSeeds;
+		this.maxSeeds = maxSeeds;
+	}
+
+	public void setSeedSet(SeedSet seedSet) {
+		this.seedSet = seedSet;
+	}
+
+	public void setShortlist(int shortlist) {
+		this.shortlist = Math.max(1, shortlist);
+	}
+
+	/**
+	 * Sets how fast the race narrows.
+	 *
+	 * @param eta - the fraction 1/eta of the configs is kept in each round at
+	 *              least, 2 to drop at most half
+	 */
+	public void setEta(double eta) {
+		if (eta <= 1) {
+			throw new IllegalArgumentException("eta must be greater than 1: " + eta);
+		}
+		this.eta = eta;
+	}
+
+	/**
+	 * Sets the significance level of the test that drops a config.
+	 *
+	 * @param alpha - the chance of dropping a config that is as good as the
+	 *                leader, such as 0.05
+	 */
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Races the configs.
+	 *
+	 * @param configs - the configs, duplicates are raced once
+	 * @return - every config, ranked: the shortlist by mean lines, then the
+	 *           dropped configs from the last round to the first
+	 */
+	public List<Entry> race(List<AgentConfig> configs) {
+		int limit = Math.min(maxSeeds, seedSet.size());
+		if (limit < minSeeds) {
+			throw new IllegalArgumentException("The seed set " + seedSet + " has fewer than " + minSeeds + " seeds");
+		}
+
+		Map<AgentConfig, Entry> entries = new HashMap<>();
+		List<Entry> alive = new ArrayList<>();
+		for (AgentConfig config : new LinkedHashSet<>(configs)) {
+			Entry entry = new Entry(config, limit);
+			entries.put(config, entry);
+			alive.add(entry);
+		}
+		List<Entry> dropped = new ArrayList<>();
+
+		int played = 0;
+		int budget = minSeeds;
+		rounds = 0;
+
+		while (true) {
+
+			// play the new seeds of the round with the configs that are left
+			int first = played;
+			int[] seeds = seedSet.getSeeds(first, budget - first);
+			List<AgentConfig> survivors = new ArrayList<>();
+			for (Entry entry : alive) {
+				survivors.add(entry.config);
+			}
+			simulator.run(survivors, seeds, (GameResult result, int index) -> {
+				Entry entry = entries.get(result.config);
+				synchronized (entry) {
+					entry.lines[first + index] = result.lines;
+					entry.pieces += result.pieces;
+				}
+			});
+			played = budget;
+			for (Entry entry : alive) {
+				entry.seeds = played;
+			}
+			rounds++;
+
+			alive.sort((a, b) -> Double.compare(b.getMeanLines(), a.getMeanLines()));
+			if (alive.size() <= shortlist || played >= limit) {
+				break;
+			}
+
+			// drop the candidates that are significantly worse than the leader
+			Entry leader = alive.get(0);
+			int keep = Math.max(shortlist, (int)Math.ceil(alive.size()/eta));
+			double critical = Statistics.tQuantile(1 - alpha, played - 1);
+			for (int i=alive.size()-1; i>=keep; i--) {
+				Entry entry = alive.get(i);
+				if (Statistics.pairedT(leader.lines, entry.lines, played) > critical) {
+					entry.dropped = rounds;
+					dropped.add(entry);
+					alive.remove(i);
+				}
+			}
+
+			budget = Math.min(2*budget, limit);
+		}
+
+		// the shortlist, then the configs that lasted longest
+		List<Entry> ranking = new ArrayList<>(alive);
+		dropped.sort((a, b) -> a.dropped != b.dropped ? b.dropped - a.dropped
+				: Double.compare(b.getMeanLines(), a.getMeanLines()));
+		ranking.addAll(dropped);
+		return ranking;
+	}
+
+	/**
+	 * Runs the race from the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		int minSeeds = 2;
+		int maxSeeds = 64;
+		int firstSeed = 0;
+		int shortlist = 1;
+		double eta = 2;
+		double alpha = 0.05;
+		int randomConfigs = 16;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int lookahead = 0;
+		int maxPieces = 0;
+		int maxLines = 0;
+		String configFile = null;
+		String grid = null;
+		String seedSet = null;
+
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--configs=")) configFile = value;
+			else if (arg.startsWith("--grid=")) grid = value;
+			else if (arg.startsWith("--randomConfigs=")) randomConfigs = Integer.parseInt(value);
+			else if (arg.startsWith("--minSeeds=")) minSeeds = Integer.parseInt(value);
+			else if (arg.startsWith("--maxSeeds=")) maxSeeds = Integer.parseInt(value);
+			else if (arg.startsWith("--firstSeed=")) firstSeed = Integer.parseInt(value);
+			else if (arg.startsWith("--seedSet=")) seedSet = value;
+			else if (arg.startsWith("--shortlist=")) shortlist = Integer.parseInt(value);
+			else if (arg.startsWith("--eta=")) eta = Double.parseDouble(value);
+			else if (arg.startsWith("--alpha=")) alpha = Double.parseDouble(value);
+			else if (arg.startsWith("--threads=")) threads = Integer.parseInt(value);
+			else if (arg.startsWith("--lookahead=")) lookahead = Integer.parseInt(value);
+			else if (arg.startsWith("--maxPieces=")) maxPieces = Integer.parseInt(value);
+			else if (arg.startsWith("--maxLines=")) maxLines = Integer.parseInt(value);
+			else throw new IllegalArgumentException("Unknown argument: " + arg);
+		}
+
+		// the configs to race
+		List<AgentConfig> configs = new ArrayList<>();
+		if (configFile != null) {
+			for (String line : Files.readAllLines(Paths.get(configFile), StandardCharsets.UTF_8)) {
+				if (!line.trim().isEmpty() && !line.startsWith("#")) {
+					configs.add(AgentConfig.parse(line));
+				}
+			}
+		}
+		else if (grid != null) {
+			configs.addAll(AgentConfig.grid(grid));
+		}
+		else {
+			Random random = new Random();
+			for (int i=0; i<randomConfigs; i++) {
+				configs.add(AgentConfig.random(random));
+			}
+		}
+
+		LocalSimulator simulator = new LocalSimulator(threads);
+		simulator.setLookahead(lookahead);
+		simulator.setBudget(new GameBudget(maxPieces, maxLines, 0));
+
+		SeedSet seeds = seedSet != null ? SeedSet.parse(seedSet) : SeedSet.range(firstSeed);
+		ConfigRace race = new ConfigRace(simulator);
+		race.setSeeds(minSeeds, maxSeeds);
+		race.setSeedSet(seeds);
+		race.setShortlist(shortlist);
+		race.setEta(eta);
+		race.setAlpha(alpha);
+
+		List<Entry> ranking;
+		try {
+			ranking = race.race(configs);
+		}
+		finally {
+			simulator.shutdown();
+		}
+
+		long games = 0;
+		long pieces = 0;
+		System.out.println("rank,heightFactor,balanceFactor,holeFactor,blockFactor,lineFactor,seeds,meanLines,stdDevLines,dropped");
+		for (int i=0; i<ranking.size(); i++) {
+			Entry entry = ranking.get(i);
+			games += entry.seeds;
+			pieces += entry.pieces;
+			System.out.println((i + 1) + "," + entry.config + "," + entry.seeds + "," + entry.getMeanLines() + ","
+					+ entry.getStdDevLines() + "," + entry.dropped);
+		}
+		System.err.println(ranking.size() + " configs, " + race.getRounds() + " rounds, " + games + " games, "
+				+ pieces + " pieces, " + (long)ranking.size()*Math.min(maxSeeds, seeds.size()) + " games without racing");
+	}
+}
@@ -0,0 +1,311 @@
+package sim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPOutputStream;
+
+import sim.tetris.GameResult;
+
+/**
+ * Writes results to a file or stream on a dedicated writer thread.  The
+ * callers only put results on a bounded queue, and block when the writer
+ * falls behind.  The writer drains the queue in batches, and writes the
+ * formatted lines in large buffers, so that tens of thousands of results
+ * per second can be written without slowing down the games.
+ *
+ * <p>Files that end with .gz are compressed with gzip, and files that end
+ * with .json or .ndjson are written as NDJSON instead of CSV.
+ *
+ * <p>close() must be called to write the buffered results.  It waits for
+ * the writer to finish, and throws the first error the writer ran into.
+ * Results accepted while the sink is closed are either written, or rejected
+ * with an IllegalStateException, but never dropped.
+ */
+public class FileResultSink implements ResultSink {
+
+	/** the default number of results that can wait for the writer */
+	public static final int DEFAULT_QUEUE_SIZE = 8192;
+
+	/** the size of the buffer of the writer, in bytes */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** the most results the writer takes from the queue at once */
+	private static final int BATCH_SIZE = 1024;
+
+	/** tells the writer that the sink is closed */
+	private static final GameResult END = new GameResult(0, null, 0, 0, 0);
+
+	/** how long a put waits before checking that the writer is still alive */
+	private static final long PUT_WAIT_MILLIS = 100;
+
+	private final BlockingQueue<GameResult> queue;
+	private final Format format;
+	private final WritableByteChannel channel;
+	private final Thread writer;
+
+	/** the first error of the writer */
+	private volatile IOException error;
+
+	/** tells if close was called */
+	private volatile boolean closed = false;
+
+	/**
+	 * Held for reading by accept while it queues a result, and for writing by
+	 * close while it marks the sink closed, so that no result is queued after
+	 * END.
+	 */
+	private final ReadWriteLock state = new ReentrantReadWriteLock();
+
+	/**
+	 * Opens a sink that writes to a file, picking the format and compression
+	 * from the file name.
+	 *
+	 * @param path - the file to write, replaced if it exists
+	 * @return - the sink
+	 */
+	public static FileResultSink open(Path path) throws IOException {
+		String name = path.getFileName().toString();
+		return new FileResultSink(path, Format.of(name), name.endsWith(".gz"));
+	}
+
+	/**
+	 * Creates a sink that writes to a file.
+	 *
+	 * @param path - the file to write, replaced if it exists
+	 * @param format - the format of the results
+	 * @param gzip - true to compress the file with gzip
+	 */
+	public FileResultSink(Path path, Format format, boolean gzip) throws IOException {
+		this(gzip ? Channels.newChannel(new GZIPOutputStream(Files.newOutputStream(path), BUFFER_SIZE))
+				: FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+				format, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a sink that writes to a stream, such as System.out.  The stream
+	 * is closed when the sink is closed.
+	 *
+	 * @param out - the stream to write
+	 * @param format - the format of the results
+	 */
+	public FileResultSink(OutputStream out, Format format) {
+		this(Channels.newChannel(out), format, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a sink and starts its writer.
+	 *
+	 * @param channel - the channel to write
+	 * @param format - the format of the results
+	 * @param queueSize - the number of results that can wait for the writer
+	 */
+	public FileResultSink(WritableByteChannel channel, Format format, int queueSize) {
+		this.channel = channel;
+		this.format = format;
+		queue = new ArrayBlockingQueue<>(queueSize);
+		writer = new Thread(this::drain, "result-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queues a result for the writer, and blocks while the queue is full.
+	 *
+	 * @param result - the result of a game
+	 */
+	public void accept(GameResult result) {
+		state.readLock().lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("The sink is closed");
+			}
+			if (error != null) {
+				throw new UncheckedIOException(error);
+			}
+
+			if (!putUninterruptibly(result)) {
+				throw new UncheckedIOException(error != null ? error : new IOException("The result writer stopped"));
+			}
+		}
+		finally {
+			state.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the queued results, and closes the file.
+	 */
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			state.writeLock().lock();
+			try {
+				closed = true;
+			}
+			finally {
+				state.writeLock().unlock();
+			}
+			putUninterruptibly(END);
+
+			boolean interrupted = false;
+			while (writer.isAlive()) {
+				try {
+					writer.join();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Puts a result on the queue, waiting for space even if the thread is
+	 * interrupted, so that no result is lost.  Stops waiting if the writer
+	 * is no longer running, since the queue would then never empty.
+	 *
+	 * @return - true if the result was queued, false if the writer stopped
+	 */
+	private boolean putUninterruptibly(GameResult result) {
+		boolean interrupted = false;
+		boolean queued = false;
+		while (!queued && writer.isAlive()) {
+			try {
+				queued = queue.offer(result, PUT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return queued;
+	}
+
+	/**
+	 * The loop of the writer thread.  Results are formatted into the buffer,
+	 * which is written when it is full or when the queue runs empty.  After an
+	 * error, of any kind, the results are still taken from the queue, so that
+	 * the callers do not block, but they are dropped.
+	 */
+	private void drain() {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		List<GameResult> batch = new ArrayList<>(BATCH_SIZE);
+
+		if (format == Format.CSV) {
+			append(buffer, GameResult.CSV_HEADER);
+		}
+
+		boolean done = false;
+		while (!done) {
+			if (queue.drainTo(batch, BATCH_SIZE) == 0) {
+				flush(buffer);
+				try {
+					batch.add(queue.take());
+				}
+				catch (InterruptedException e) {
+					// only close ends the writer
+					continue;
+				}
+			}
+
+			for (GameResult result : batch) {
+				if (result == END) {
+					done = true;
+					break;
+				}
+				if (error == null) {
+					try {
+						append(buffer, format.format(result));
+					}
+					catch (Throwable t) {
+						fail(t);
+					}
+				}
+			}
+			batch.clear();
+		}
+
+		flush(buffer);
+		try {
+			channel.close();
+		}
+		catch (Throwable t) {
+			fail(t);
+		}
+	}
+
+	/**
+	 * Records the first error of the writer, wrapping errors that are not
+	 * IOExceptions.
+	 */
+	private void fail(Throwable t) {
+		if (error == null) {
+			error = t instanceof IOException ? (IOException)t : new IOException("The result writer failed", t);
+		}
+	}
+
+	/**
+	 * Adds a line to the buffer, writing the buffer first if the line does
+	 * not fit.
+	 */
+	private void append(ByteBuffer buffer, String line) {
+		byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > buffer.remaining()) {
+			flush(buffer);
+		}
+
+		if (bytes.length > buffer.remaining()) {
+			write(ByteBuffer.wrap(bytes));
+		}
+		else {
+			buffer.put(bytes);
+		}
+	}
+
+	/**
+	 * Writes the contents of the buffer, and clears it.
+	 */
+	private void flush(ByteBuffer buffer) {
+		buffer.flip();
+		write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Writes all remaining bytes to the channel, unless an error occurred.
+	 */
+	private void write(ByteBuffer bytes) {
+		try {
+			while (error == null && bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		catch (Throwable t) {
+			fail(t);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package sim;
+
+import java.io.Serializable;
+
+/**
+ * The restriction of SplittableSimulateGameFn: a range of block indexes
+ * that is left to play, and a snapshot of the game before the first block
+ * of the range.
+ */
+public class GameCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the index of the first block to play */
+	public final long from;
+
+	/** the index after the last block to play */
+	public final long to;
+
+	/** the game before block from, written by Game.writeTo, or null to start a new game */
+	public final byte[] snapshot;
+
+	/**
+	 * Creates a checkpoint.
+	 *
+	 * @param from - the index of the first block to play
+	 * @param to - the index after the last block to play
+	 * @param snapshot - the game before block from, or null for a new game
+	 */
+	public GameCheckpoint(long from, long to, byte[] snapshot) {
+		this.from = from;
+		this.to = to;
+		this.snapshot = snapshot;
+	}
+
+	public String toString() {
+		return "[" + from + ", " + to + ")" + (snapshot != null ? " with " + snapshot.length + " byte snapshot" : "");
+	}
+}
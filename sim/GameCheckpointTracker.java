@@ -0,0 +1,106 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
+
+import sim.tetris.Game;
+
+/**
+ * Tracks the blocks of a GameCheckpoint that have been claimed.  When the
+ * runner takes a checkpoint, the rest of the range is split off together
+ * with a snapshot of the game, so that it can be resumed on any worker
+ * without playing the game again.
+ *
+ * <p>The DoFn must hold the lock of the tracker while it claims and plays
+ * a block, so that a checkpoint taken from another thread always sees the
+ * game after the last claimed block.
+ */
+public class GameCheckpointTracker implements RestrictionTracker<GameCheckpoint> {
+
+	private GameCheckpoint restriction;
+
+	/** the game that is played, snapshotted when a checkpoint is taken */
+	private Game game;
+
+	/** the last claimed block, or -1 */
+	private long lastClaimed = -1;
+
+	/** the last block that was tried, or -1 */
+	private long lastAttempted = -1;
+
+	/** the buffer of the snapshots */
+	private final ByteBuffer buffer = ByteBuffer.allocate(Game.MAX_SNAPSHOT_SIZE);
+
+	/**
+	 * Creates a tracker.
+	 *
+	 * @param restriction - the blocks to play
+	 */
+	public GameCheckpointTracker(GameCheckpoint restriction) {
+		this.restriction = restriction;
+	}
+
+	/**
+	 * Sets the game that is snapshotted when a checkpoint is taken.
+	 *
+	 * @param game - the game, restored to the start of the restriction
+	 */
+	public synchronized void attach(Game game) {
+		this.game = game;
+	}
+
+	/**
+	 * Claims a block before it is played.
+	 *
+	 * @param block - the index of the block, greater than the last claimed
+	 * @return - false if the block is outside of the restriction, and must not be played
+	 */
+	public synchronized boolean tryClaim(long block) {
+		if (block <= lastAttempted) {
+			throw new IllegalArgumentException("Block " + block + " was already tried");
+		}
+
+		lastAttempted = block;
+		if (block >= restriction.to) {
+			return false;
+		}
+
+		lastClaimed = block;
+		return true;
+	}
+
+	/**
+	 * Marks the rest of the restriction as done, once the game has ended.
+	 */
+	public synchronized void markDone() {
+		lastAttempted = Long.MAX_VALUE;
+	}
+
+	public synchronized GameCheckpoint currentRestriction() {
+		return restriction;
+	}
+
+	public synchronized GameCheckpoint checkpoint() {
+		GameCheckpoint residual;
+		if (lastClaimed < 0) {
+			residual = restriction;
+		}
+		else {
+			buffer.clear();
+			game.writeTo(buffer);
+			residual = new GameCheckpoint(lastClaimed + 1, restriction.to, Arrays.copyOf(buffer.array(), buffer.position()));
+		}
+
+		restriction = new GameCheckpoint(restriction.from, residual.from, restriction.snapshot);
+		return residual;
+	}
+
+	public synchronized void checkDone() throws IllegalStateException {
+		if (restriction.from < restriction.to && lastAttempted < restriction.to - 1) {
+			throw new IllegalStateException("Blocks " + (lastAttempted + 1) + " to " + restriction.to
+					+ " of " + restriction + " were not played");
+		}
+	}
+}
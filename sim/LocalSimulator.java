@@ -0,0 +1,334 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.GZIPOutputStream;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.Game;
+import sim.tetris.GameBudget;
+import sim.tetris.GameReplay;
+import sim.tetris.GameResult;
+
+/**
+ * Simulates playthroughs of Tetris on the local machine, as an alternative to
+ * the Dataflow pipeline in Simulator.  Every seed is played with every config
+ * on a fork/join pool, so that idle workers steal games from busy ones when
+ * a few games run much longer than the rest.
+ *
+ * <p>Usage: LocalSimulator [--seeds=N] [--firstSeed=S] [--seedSet=name]
+ * [--configs=file] [--randomConfigs=M] [--threads=T] [--lookahead=K]
+ * [--output=file] [--maxPieces=P] [--maxLines=L] [--maxCpuMillis=C]
+ * [--replays=file]
+ *
+ * <p>The configs file has one comma separated list of factors per line.
+ * Results are written to the output file as soon as each game finishes, or
+ * printed as CSV lines if no output file is given.  See FileResultSink for
+ * the output formats.  With --replays, the placements of every game are 
+ * written to a replay file, gzipped if it ends with .gz, which can be 
+ * checked with ReplayVerifier.  The seeds are a range from firstSeed unless
+ * --seedSet is given, see SeedSet.
+ */
+public class LocalSimulator {
+
+	/** the pool that games are played on */
+	private final ForkJoinPool pool;
+
+	/** the number of moves the agents search with the next block */
+	private int lookahead = 0;
+
+	/** the limits on the length of each game */
+	private GameBudget budget = GameBudget.NONE;
+
+	/** receives the replay of each game, or null if games are not recorded */
+	private Consumer<GameReplay> replays = null;
+
+	/**
+	 * Creates a simulator using one worker per available processor.
+	 */
+	public LocalSimulator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a simulator.
+	 *
+	 * @param threads - the number of worker threads
+	 */
+	public LocalSimulator(int threads) {
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Sets how many of the best moves the agents search again with the next
+	 * block.
+	 *
+	 * @param topK - the number of moves to search, 0 for greedy agents
+	 */
+	public void setLookahead(int topK) {
+		lookahead = topK;
+	}
+
+	/**
+	 * Sets the limits on the length of each game.  Games that reach a limit
+	 * are stopped, and their results are censored.
+	 *
+	 * @param budget - the limits, or GameBudget.NONE
+	 */
+	public void setBudget(GameBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Records the placements of every game.  The consumer is called from the
+	 * worker threads, so it must be thread safe.
+	 *
+	 * @param replays - receives the replay of each game, or null
+	 */
+	public void setReplays(Consumer<GameReplay> replays) {
+		this.replays = replays;
+	}
+
+	/**
+	 * Plays every seed with every config, and blocks until all games are
+	 * finished.  The consumer is called from the worker threads as each game
+	 * finishes, so it must be thread safe.
+	 *
+	 * @param configs - the factors of the agents
+	 * @param seeds - the random seeds of the games
+	 * @param results - receives the result of each game
+	 */
+	public void run(List<AgentConfig> configs, int[] seeds, Consumer<GameResult> results) {
+		run(configs, seeds, (GameResult result, int index) -> results.accept(result));
+	}
+
+	/**
+	 * Plays every seed with every config, and passes each result with the
+	 * index of its seed, so that the results of repeated seeds are told
+	 * apart.  The consumer is called from the worker threads as each game
+	 * finishes, so it must be thread safe.
+	 *
+	 * @param configs - the factors of the agents
+	 * @param seeds - the random seeds of the games
+	 * @param results - receives the result of each game, and the index of its
+	 *                  seed in seeds
+	 */
+	public void run(List<AgentConfig> configs, int[] seeds, ObjIntConsumer<GameResult> results) {
+		pool.invoke(new Simulation(configs, seeds, lookahead, budget, results, replays, 0, configs.size()*seeds.length));
+	}
+
+	/**
+	 * Plays a single game.
+	 *
+	 * @param config - the factors of the agent
+	 * @param seed - the random seed of the game
+	 * @return - the result of the game
+	 */
+	public static GameResult play(AgentConfig config, int seed) {
+		return play(config, seed, 0);
+	}
+
+	/**
+	 * Plays a single game.
+	 *
+	 * @param config - the factors of the agent
+	 * @param seed - the random seed of the game
+	 * @param lookahead - the number of moves the agent searches with the next
+	 *                    block
+	 * @return - the result of the game
+	 */
+	public static GameResult play(AgentConfig config, int seed, int lookahead) {
+		return play(config, seed, lookahead, GameBudget.NONE);
+	}
+
+	/**
+	 * Plays a single game.
+	 *
+	 * @param config - the factors of the agent
+	 * @param seed - the random seed of the game
+	 * @param lookahead - the number of moves the agent searches with the next
+	 *                    block
+	 * @param budget - the limits on the length of the game
+	 * @return - the result of the game
+	 */
+	public static GameResult play(AgentConfig config, int seed, int lookahead, GameBudget budget) {
+		Game game = createGame(config, seed, lookahead, budget);
+		game.runSimulation();
+		return game.getResult();
+	}
+
+	/**
+	 * Creates a headless game.
+	 */
+	private static Game createGame(AgentConfig config, int seed, int lookahead, GameBudget budget) {
+		Game game = new Game(seed, config);
+		game.setHeadless(true);
+		game.setDirectPlacement(true);
+		game.setLookahead(lookahead);
+		game.setBudget(budget);
+		return game;
+	}
+
+	/**
+	 * Shuts down the worker threads.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Plays a range of the (config, seed) pairs, splitting the range in half
+	 * until a single game is left.
+	 */
+	private static class Simulation extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<AgentConfig> configs;
+		private final int[] seeds;
+		private final int lookahead;
+		private final GameBudget budget;
+		private final ObjIntConsumer<GameResult> results;
+		private final Consumer<GameReplay> replays;
+		private final int start;
+		private final int end;
+
+		Simulation(List<AgentConfig> configs, int[] seeds, int lookahead, GameBudget budget, ObjIntConsumer<GameResult> results,
+				Consumer<GameReplay> replays, int start, int end) {
+			this.configs = configs;
+			this.seeds = seeds;
+			this.lookahead = lookahead;
+			this.budget = budget;
+			this.results = results;
+			this.replays = replays;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			if (end - start == 1) {
+				AgentConfig config = configs.get(start / seeds.length);
+				int index = start % seeds.length;
+				int seed = seeds[index];
+				if (replays == null) {
+					results.accept(play(config, seed, lookahead, budget), index);
+				}
+				else {
+					Game game = createGame(config, seed, lookahead, budget);
+					game.setRecording(true);
+					game.runSimulation();
+					replays.accept(game.getReplay());
+					results.accept(game.getResult(), index);
+				}
+			}
+			else if (end > start) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new Simulation(configs, seeds, lookahead, budget, results, replays, start, middle),
+						new Simulation(configs, seeds, lookahead, budget, results, replays, middle, end));
+			}
+		}
+	}
+
+	/**
+	 * Runs the local simulation from the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		int numSeeds = 10;
+		int firstSeed = 0;
+		int randomConfigs = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int lookahead = 0;
+		int maxPieces = 0;
+		int maxLines = 0;
+		long maxCpuMillis = 0;
+		String configFile = null;
+		String outputFile = null;
+		String replayFile = null;
+		String seedSet = null;
+
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--seeds=")) numSeeds = Integer.parseInt(value);
+			else if (arg.startsWith("--firstSeed=")) firstSeed = Integer.parseInt(value);
+			else if (arg.startsWith("--seedSet=")) seedSet = value;
+			else if (arg.startsWith("--configs=")) configFile = value;
+			else if (arg.startsWith("--randomConfigs=")) randomConfigs = Integer.parseInt(value);
+			else if (arg.startsWith("--threads=")) threads = Integer.parseInt(value);
+			else if (arg.startsWith("--lookahead=")) lookahead = Integer.parseInt(value);
+			else if (arg.startsWith("--output=")) outputFile = value;
+			else if (arg.startsWith("--maxPieces=")) maxPieces = Integer.parseInt(value);
+			else if (arg.startsWith("--maxLines=")) maxLines = Integer.parseInt(value);
+			else if (arg.startsWith("--maxCpuMillis=")) maxCpuMillis = Long.parseLong(value);
+			else if (arg.startsWith("--replays=")) replayFile = value;
+			else throw new IllegalArgumentException("Unknown argument: " + arg);
+		}
+
+		// the configs to evaluate
+		List<AgentConfig> configs = new ArrayList<>();
+		if (configFile != null) {
+			for (String line : Files.readAllLines(Paths.get(configFile), StandardCharsets.UTF_8)) {
+				if (!line.trim().isEmpty() && !line.startsWith("#")) {
+					configs.add(AgentConfig.parse(line));
+				}
+			}
+		}
+		else {
+			Random random = new Random();
+			for (int i=0; i<randomConfigs; i++) {
+				configs.add(AgentConfig.random(random));
+			}
+		}
+
+		// the seeds to play
+		int[] seeds = (seedSet != null ? SeedSet.parse(seedSet) : SeedSet.range(firstSeed)).getSeeds(0, numSeeds);
+
+		// write the results as they finish
+		ResultSink sink = outputFile != null ? FileResultSink.open(Paths.get(outputFile))
+				: new FileResultSink(System.out, ResultSink.Format.CSV);
+		LocalSimulator simulator = new LocalSimulator(threads);
+		simulator.setLookahead(lookahead);
+		simulator.setBudget(new GameBudget(maxPieces, maxLines, maxCpuMillis));
+
+		// write the replays as they finish
+		DataOutputStream replays = null;
+		if (replayFile != null) {
+			OutputStream out = Files.newOutputStream(Paths.get(replayFile));
+			replays = new DataOutputStream(new BufferedOutputStream(replayFile.endsWith(".gz") ? new GZIPOutputStream(out) : out));
+			final DataOutputStream stream = replays;
+			simulator.setReplays(replay -> {
+				synchronized (stream) {
+					try {
+						replay.writeTo(stream);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		}
+
+		try {
+			simulator.run(configs, seeds, sink);
+		}
+		finally {
+			simulator.shutdown();
+			sink.close();
+			if (replays != null) {
+				replays.close();
+			}
+		}
+	}
+}
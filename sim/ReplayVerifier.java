@@ -0,0 +1,70 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+import sim.tetris.GameReplay;
+import sim.tetris.GameResult;
+
+/**
+ * Checks replay files written by LocalSimulator --replays.  Every game is
+ * played again from its recorded placements, without the agent, and the
+ * lines, score and pieces are compared with the recorded result.
+ *
+ * <p>Usage: ReplayVerifier file...
+ *
+ * <p>Games that do not match are printed with the recorded and replayed
+ * results, and files that cannot be read with the error, followed by the
+ * totals.  The exit code is 1 if any game did not match or any file was
+ * corrupt.
+ */
+public class ReplayVerifier {
+
+	/**
+	 * Verifies the replay files given on the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		long games = 0;
+		long pieces = 0;
+		long mismatches = 0;
+		long corrupt = 0;
+		long start = System.nanoTime();
+
+		for (String file : args) {
+			InputStream in = Files.newInputStream(Paths.get(file));
+			if (file.endsWith(".gz")) {
+				in = new GZIPInputStream(in);
+			}
+
+			try (DataInputStream replays = new DataInputStream(new BufferedInputStream(in))) {
+				for (GameReplay replay = GameReplay.readFrom(replays); replay != null; replay = GameReplay.readFrom(replays)) {
+					GameResult recorded = replay.getRecordedResult();
+					GameResult replayed = replay.replay();
+					if (recorded.lines != replayed.lines || recorded.score != replayed.score || recorded.pieces != replayed.pieces) {
+						System.out.println("Mismatch: recorded " + recorded + ", replayed " + replayed);
+						mismatches++;
+					}
+
+					games++;
+					pieces += replay.getPieces();
+				}
+			}
+			catch (IOException e) {
+				System.out.println("Corrupt file " + file + ": " + e.getMessage());
+				corrupt++;
+			}
+		}
+
+		double seconds = (System.nanoTime() - start)/1e9;
+		System.out.println(games + " games, " + pieces + " pieces, " + mismatches + " mismatches, " + corrupt
+				+ " corrupt files in " + String.format("%.2f", seconds) + " s");
+		if (mismatches > 0 || corrupt > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package sim;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+import sim.tetris.GameResult;
+
+/**
+ * Receives the results of simulated games.  Sinks are thread safe, so that
+ * the workers of LocalSimulator can pass their results directly to a sink,
+ * and must be closed to flush the results that are still buffered.
+ */
+public interface ResultSink extends Consumer<GameResult>, Closeable {
+
+	/**
+	 * The formats that results can be written in.
+	 */
+	enum Format {
+
+		/** comma separated values, with GameResult.CSV_HEADER as first line */
+		CSV,
+
+		/** one JSON object per line */
+		NDJSON;
+
+		/**
+		 * Picks the format from the extension of a file name, ignoring a
+		 * trailing .gz.
+		 *
+		 * @param fileName - the name of the file
+		 * @return - NDJSON for .json and .ndjson files, CSV otherwise
+		 */
+		public static Format of(String fileName) {
+			String name = fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - 3) : fileName;
+			return name.endsWith(".json") || name.endsWith(".ndjson") ? NDJSON : CSV;
+		}
+
+		/**
+		 * Formats a result as a line of this format, without the line break.
+		 *
+		 * @param result - the result of a game
+		 * @return - the formatted line
+		 */
+		public String format(GameResult result) {
+			return this == CSV ? result.toCsv() : result.toJson();
+		}
+	}
+}
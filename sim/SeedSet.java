@@ -0,0 +1,206 @@
+package sim;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A named, reproducible sequence of game seeds.  Configs that are played on
+ * the same seed set see the same blocks in the same order, so their results
+ * can be compared seed by seed (common random numbers), in one run or across
+ * runs.
+ *
+ * <p>A set is either a range of consecutive seeds, which the runners play by
+ * default, a set generated from its name, or a list read from a file.  The
+ * seeds of a named set are scrambled from the name and the index, so they
+ * are all different, a longer prefix of the set extends a shorter one, and
+ * sets with different names, such as "tuning" and "validation", are
+ * unrelated.
+ *
+ * <p>On the command line, a set is given as its name, or as @file for a file
+ * of one seed per line, as written by write.
+ */
+public class SeedSet implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the name of the set */
+	private final String name;
+
+	/** the first seed of a range */
+	private final int first;
+
+	/** the scramble key of a named set */
+	private final int key;
+
+	/** the seeds of a set read from a file, or null */
+	private final int[] listed;
+
+	/** tells if the set is a range of consecutive seeds */
+	private final boolean range;
+
+	private SeedSet(String name, int first, int key, int[] listed, boolean range) {
+		this.name = name;
+		this.first = first;
+		this.key = key;
+		this.listed = listed;
+		this.range = range;
+	}
+
+	/**
+	 * Gets the consecutive seeds starting at a seed.
+	 *
+	 * @param first - the first seed
+	 */
+	public static SeedSet range(int first) {
+		return new SeedSet("range:" + first, first, 0, null, true);
+	}
+
+	/**
+	 * Gets the set generated from a name.
+	 *
+	 * @param name - the name of the set
+	 */
+	public static SeedSet named(String name) {
+		return new SeedSet(name, 0, mix(name.hashCode()), null, false);
+	}
+
+	/**
+	 * Reads a set from a file of one seed per line.  Empty lines and lines
+	 * starting with # are skipped.  A seed may be listed only once, since
+	 * playing it twice would count the same game twice.
+	 *
+	 * @param path - the file
+	 * @return - the set, named after the file
+	 */
+	public static SeedSet read(Path path) throws IOException {
+		List<Integer> seeds = new ArrayList<>();
+		Set<Integer> distinct = new HashSet<>();
+		for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				int seed = Integer.parseInt(line);
+				if (!distinct.add(seed)) {
+					throw new IllegalArgumentException("The seed " + seed + " is listed twice in " + path);
+				}
+				seeds.add(seed);
+			}
+		}
+
+		int[] listed = new int[seeds.size()];
+		for (int i=0; i<listed.length; i++) {
+			listed[i] = seeds.get(i);
+		}
+		return new SeedSet(path.getFileName().toString(), 0, 0, listed, false);
+	}
+
+	/**
+	 * Parses a set from the command line.
+	 *
+	 * @param spec - the name of the set, or @file to read it from a file
+	 */
+	public static SeedSet parse(String spec) throws IOException {
+		return spec.startsWith("@") ? read(Paths.get(spec.substring(1))) : named(spec);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of seeds in the set.
+	 *
+	 * @return - the number of listed seeds, or Integer.MAX_VALUE for ranges
+	 *           and named sets
+	 */
+	public int size() {
+		return listed != null ? listed.length : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Gets a seed of the set.
+	 *
+	 * @param index - the index of the seed, below size()
+	 * @return - the seed
+	 */
+	public int getSeed(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Seed " + index + " of " + name + ", which has " + size());
+		}
+
+		if (listed != null) {
+			return listed[index];
+		}
+		return range ? first + index : mix(mix(index) ^ key);
+	}
+
+	/**
+	 * Gets consecutive seeds of the set.
+	 *
+	 * @param from - the index of the first seed
+	 * @param count - the number of seeds
+	 * @return - the seeds
+	 */
+	public int[] getSeeds(int from, int count) {
+		int[] seeds = new int[count];
+		for (int i=0; i<count; i++) {
+			seeds[i] = getSeed(from + i);
+		}
+		return seeds;
+	}
+
+	/**
+	 * Writes the first seeds of the set to a file, which read loads as the
+	 * same seeds.
+	 *
+	 * @param path - the file
+	 * @param count - the number of seeds to write
+	 */
+	public void write(Path path, int count) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add("# seed set " + name);
+		for (int seed : getSeeds(0, count)) {
+			lines.add(Integer.toString(seed));
+		}
+		Files.write(path, lines, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Scrambles the bits of an int, with the finalizer of MurmurHash3.  Every
+	 * step can be undone, so different inputs give different outputs.
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Writes the first seeds of a set to a file, so that it can be used by
+	 * other tools or checked into a repository.
+	 *
+	 * <p>Usage: SeedSet name count file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: SeedSet name count file");
+			System.exit(1);
+		}
+		parse(args[0]).write(Paths.get(args[2]), Integer.parseInt(args[1]));
+	}
+}
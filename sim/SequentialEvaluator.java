@@ -0,0 +1,374 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.GameBudget;
+import sim.tetris.GameResult;
+
+/**
+ * Plays configs on a seed set until their lines per game are known to a
+ * target precision, instead of on a fixed number of seeds.  Seeds are added
+ * in rounds, and a config stops once the confidence interval of its mean
+ * lines is narrower than the target width.  With a baseline, the interval is
+ * the one of the paired difference from the baseline on the same seeds,
+ * which is usually much narrower than the intervals of the two means.
+ *
+ * <p>Each round plays the next seeds of the set, so every config is played
+ * on a prefix of the same seeds.  The number of seeds of the next round is
+ * projected from the spread of the configs that are left, at most doubling
+ * the seeds played.  Stopping when the interval is narrow enough makes the
+ * intervals a little too optimistic, so the target should have some slack.
+ *
+ * <p>Usage: SequentialEvaluator --targetWidth=W [--baseline=factors]
+ * [--configs=file] [--grid=factors] [--randomConfigs=M] [--seedSet=name]
+ * [--firstSeed=S] [--minSeeds=N] [--maxSeeds=N] [--confidence=C]
+ * [--threads=T] [--lookahead=K] [--maxPieces=P] [--maxLines=L]
+ *
+ * <p>The estimates are printed as CSV, with the baseline first.  The seed
+ * set is a range from firstSeed unless --seedSet is given, see SeedSet.
+ */
+public class SequentialEvaluator {
+
+	/**
+	 * The lines per seed of a config, and the interval of its mean.
+	 */
+	public static class Estimate {
+
+		public final AgentConfig config;
+
+		/** the lines per seed, by the index of the seed in the set */
+		public final double[] lines;
+
+		/** the number of seeds played */
+		public int seeds = 0;
+
+		/** the number of blocks played in all games */
+		public long pieces = 0;
+
+		/** tells if the interval reached the target width */
+		public boolean converged = false;
+
+		Estimate(AgentConfig config, int maxSeeds) {
+			this.config = config;
+			lines = new double[maxSeeds];
+		}
+
+		public double getMeanLines() {
+			return Statistics.mean(lines, seeds);
+		}
+
+		/**
+		 * Gets the half width of the confidence interval of the mean lines.
+		 */
+		public double getHalfWidth(double confidence) {
+			return Statistics.halfWidth(lines, seeds, confidence);
+		}
+
+		/**
+		 * Gets the mean difference in lines from another config, on the seeds
+		 * this config played.
+		 */
+		public double getMeanDifference(Estimate other) {
+			return Statistics.mean(Statistics.differences(lines, other.lines, seeds), seeds);
+		}
+
+		/**
+		 * Gets the half width of the confidence interval of the mean
+		 * difference from another config.
+		 */
+		public double getDifferenceHalfWidth(Estimate other, double confidence) {
+			return Statistics.halfWidth(Statistics.differences(lines, other.lines, seeds), seeds, confidence);
+		}
+
+		/**
+		 * Gets the two sided p-value of the paired t-test against another
+		 * config.
+		 */
+		public double getDifferencePValue(Estimate other) {
+			return Statistics.pValue(Statistics.pairedT(lines, other.lines, seeds), seeds - 1);
+		}
+	}
+
+	/** the simulator that plays the games */
+	private final LocalSimulator simulator;
+
+	/** the seeds the configs are played on */
+	private SeedSet seedSet = SeedSet.range(0);
+
+	/** the number of seeds of the first round */
+	private int minSeeds = 10;
+
+	/** the largest number of seeds a config is played on */
+	private int maxSeeds = 1000;
+
+	/** the confidence level of the intervals */
+	private double confidence = 0.95;
+
+	/** a config stops when its interval is narrower than this */
+	private double targetWidth = 1;
+
+	/** the number of rounds of the last evaluation */
+	private int rounds = 0;
+
+	/**
+	 * Creates an evaluator that plays its games on a simulator.
+	 *
+	 * @param simulator - the simulator, with its lookahead and budget set
+	 */
+	public SequentialEvaluator(LocalSimulator simulator) {
+		this.simulator = simulator;
+	}
+
+	public void setSeedSet(SeedSet seedSet) {
+		this.seedSet = seedSet;
+	}
+
+	/**
+	 * Sets the number of seeds of the first round, and the most seeds a
+	 * config is played on if its interval stays wide.
+	 *
+	 * @param minSeeds - the seeds of the first round, at least 2
+	 * @param maxSeeds - the most seeds a config is played on
+	 */
+	public void setSeeds(int minSeeds, int maxSeeds) {
+		if (minSeeds < 2 || maxSeeds < minSeeds) {
+			throw new IllegalArgumentException("Expected 2 <= minSeeds <= maxSeeds: " + minSeeds + ", " + maxSeeds);
+		}
+		this.minSeeds = minSeeds;
+		this.maxSeeds = maxSeeds;
+	}
+
+	/**
+	 * Sets the precision a config is played to.
+	 *
+	 * @param targetWidth - the full width of the interval, in lines per game
+	 * @param confidence - the confidence level of the interval, such as 0.95
+	 */
+	public void setTarget(double targetWidth, double confidence) {
+		if (targetWidth <= 0 || confidence <= 0 || confidence >= 1) {
+			throw new IllegalArgumentException("Expected a positive width and a confidence below 1: "
+					+ targetWidth + ", " + confidence);
+		}
+		this.targetWidth = targetWidth;
+		this.confidence = confidence;
+	}
+
+	public double getConfidence() {
+		return confidence;
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Plays each config until the interval of its mean lines is narrower
+	 * than the target width, or until it played the most seeds.
+	 *
+	 * @param configs - the configs, duplicates are played once
+	 * @return - the estimates, in the order of the configs
+	 */
+	public List<Estimate> evaluate(List<AgentConfig> configs) {
+		return evaluate(configs, null);
+	}
+
+	/**
+	 * Plays each config until the interval of its mean difference from the
+	 * baseline is narrower than the target width, or until it played the
+	 * most seeds.  The baseline is played on every seed that a config is
+	 * played on.
+	 *
+	 * @param configs - the configs, duplicates are played once
+	 * @param baseline - the config the others are compared to, or null to
+	 *                   estimate the mean of each config
+	 * @return - the estimates, the baseline first if there is one, then the
+	 *           configs in their order
+	 */
+	public List<Estimate> evaluate(List<AgentConfig> configs, AgentConfig baseline) {
+		int limit = Math.min(maxSeeds, seedSet.size());
+		if (limit < minSeeds) {
+			throw new IllegalArgumentException("The seed set " + seedSet + " has fewer than " + minSeeds + " seeds");
+		}
+
+		Map<AgentConfig, Estimate> estimates = new HashMap<>();
+		List<Estimate> all = new ArrayList<>();
+		Estimate reference = null;
+		if (baseline != null) {
+			reference = new Estimate(baseline, limit);
+			estimates.put(baseline, reference);
+			all.add(reference);
+		}
+		List<Estimate> active = new ArrayList<>();
+		for (AgentConfig config : new LinkedHashSet<>(configs)) {
+			if (!estimates.containsKey(config)) {
+				Estimate estimate = new Estimate(config, limit);
+				estimates.put(config, estimate);
+				all.add(estimate);
+				active.add(estimate);
+			}
+		}
+
+		int played = 0;
+		int budget = minSeeds;
+		rounds = 0;
+
+		while (!active.isEmpty()) {
+
+			// play the new seeds with the configs that are left, and the baseline
+			List<AgentConfig> players = new ArrayList<>();
+			for (Estimate estimate : active) {
+				players.add(estimate.config);
+			}
+			if (reference != null) {
+				players.add(reference.config);
+			}
+
+			int first = played;
+			int[] seeds = seedSet.getSeeds(first, budget - first);
+			simulator.run(players, seeds, (GameResult result, int index) -> {
+				Estimate estimate = estimates.get(result.config);
+				synchronized (estimate) {
+					estimate.lines[first + index] = result.lines;
+					estimate.pieces += result.pieces;
+				}
+			});
+
+			played = budget;
+			for (AgentConfig config : players) {
+				estimates.get(config).seeds = played;
+			}
+			rounds++;
+
+			// stop the configs whose interval is narrow enough
+			int needed = played;
+			double t = Statistics.tQuantile((1 + confidence)/2, played - 1);
+			for (int i=active.size()-1; i>=0; i--) {
+				Estimate estimate = active.get(i);
+				double[] values = reference != null ? Statistics.differences(estimate.lines, reference.lines, played) : estimate.lines;
+				double stdDev = Statistics.stdDev(values, played);
+
+				if (2*t*stdDev/Math.sqrt(played) <= targetWidth) {
+					estimate.converged = true;
+					active.remove(i);
+				}
+				else {
+					needed = Math.max(needed, (int)Math.min(limit, Math.ceil(Math.pow(2*t*stdDev/targetWidth, 2))));
+				}
+			}
+
+			if (played >= limit) {
+				break;
+			}
+			budget = Math.min(Math.max(needed, played + 1), Math.min(2*played, limit));
+		}
+		return all;
+	}
+
+	/**
+	 * Runs the evaluation from the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		double targetWidth = 0;
+		double confidence = 0.95;
+		int minSeeds = 10;
+		int maxSeeds = 1000;
+		int firstSeed = 0;
+		int randomConfigs = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int lookahead = 0;
+		int maxPieces = 0;
+		int maxLines = 0;
+		String configFile = null;
+		String grid = null;
+		String seedSet = null;
+		AgentConfig baseline = null;
+
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--targetWidth=")) targetWidth = Double.parseDouble(value);
+			else if (arg.startsWith("--confidence=")) confidence = Double.parseDouble(value);
+			else if (arg.startsWith("--baseline=")) baseline = AgentConfig.parse(value);
+			else if (arg.startsWith("--configs=")) configFile = value;
+			else if (arg.startsWith("--grid=")) grid = value;
+			else if (arg.startsWith("--randomConfigs=")) randomConfigs = Integer.parseInt(value);
+			else if (arg.startsWith("--seedSet=")) seedSet = value;
+			else if (arg.startsWith("--firstSeed=")) firstSeed = Integer.parseInt(value);
+			else if (arg.startsWith("--minSeeds=")) minSeeds = Integer.parseInt(value);
+			else if (arg.startsWith("--maxSeeds=")) maxSeeds = Integer.parseInt(value);
+			else if (arg.startsWith("--threads=")) threads = Integer.parseInt(value);
+			else if (arg.startsWith("--lookahead=")) lookahead = Integer.parseInt(value);
+			else if (arg.startsWith("--maxPieces=")) maxPieces = Integer.parseInt(value);
+			else if (arg.startsWith("--maxLines=")) maxLines = Integer.parseInt(value);
+			else throw new IllegalArgumentException("Unknown argument: " + arg);
+		}
+		if (targetWidth <= 0) {
+			throw new IllegalArgumentException("--targetWidth is required");
+		}
+
+		// the configs to evaluate
+		List<AgentConfig> configs = new ArrayList<>();
+		if (configFile != null) {
+			for (String line : Files.readAllLines(Paths.get(configFile), StandardCharsets.UTF_8)) {
+				if (!line.trim().isEmpty() && !line.startsWith("#")) {
+					configs.add(AgentConfig.parse(line));
+				}
+			}
+		}
+		else if (grid != null) {
+			configs.addAll(AgentConfig.grid(grid));
+		}
+		else {
+			Random random = new Random();
+			for (int i=0; i<randomConfigs; i++) {
+				configs.add(AgentConfig.random(random));
+			}
+		}
+
+		LocalSimulator simulator = new LocalSimulator(threads);
+		simulator.setLookahead(lookahead);
+		simulator.setBudget(new GameBudget(maxPieces, maxLines, 0));
+
+		SequentialEvaluator evaluator = new SequentialEvaluator(simulator);
+		evaluator.setSeedSet(seedSet != null ? SeedSet.parse(seedSet) : SeedSet.range(firstSeed));
+		evaluator.setSeeds(minSeeds, maxSeeds);
+		evaluator.setTarget(targetWidth, confidence);
+
+		List<Estimate> estimates;
+		try {
+			estimates = evaluator.evaluate(configs, baseline);
+		}
+		finally {
+			simulator.shutdown();
+		}
+
+		long games = 0;
+		long pieces = 0;
+		Estimate reference = baseline != null ? estimates.get(0) : null;
+		System.out.println("heightFactor,balanceFactor,holeFactor,blockFactor,lineFactor,seeds,meanLines,halfWidth,"
+				+ "meanDifference,differenceHalfWidth,pValue,converged");
+		for (Estimate estimate : estimates) {
+			games += estimate.seeds;
+			pieces += estimate.pieces;
+
+			String difference = ",,";
+			if (reference != null && estimate != reference) {
+				difference = estimate.getMeanDifference(reference) + "," + estimate.getDifferenceHalfWidth(reference, confidence)
+						+ "," + estimate.getDifferencePValue(reference);
+			}
+			System.out.println(estimate.config + "," + estimate.seeds + "," + estimate.getMeanLines() + ","
+					+ estimate.getHalfWidth(confidence) + "," + difference + "," + (estimate == reference ? "" : estimate.converged));
+		}
+		System.err.println(estimates.size() + " configs, " + evaluator.getRounds() + " rounds, " + games + " games, "
+				+ pieces + " pieces");
+	}
+}
@@ -0,0 +1,128 @@
+package sim;
+
+import java.io.Serializable;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.GameResult;
+
+import com.google.api.services.bigquery.model.TableRow;
+
+/**
+ * Running totals of the games played with one agent config.  Summaries of
+ * different shards of the same config can be merged.
+ */
+public class ShardSummary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public final AgentConfig config;
+	public long games = 0;
+	public long lines = 0;
+	public double linesSquared = 0;
+	public int minLines = Integer.MAX_VALUE;
+	public int maxLines = Integer.MIN_VALUE;
+	public long score = 0;
+	public long pieces = 0;
+	public long censored = 0;
+
+	/**
+	 * Creates an empty summary.
+	 *
+	 * @param config - the factors of the agent
+	 */
+	public ShardSummary(AgentConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Adds a game to the totals.
+	 *
+	 * @param result - the result of the game
+	 */
+	public void add(GameResult result) {
+		games++;
+		lines += result.lines;
+		linesSquared += (double)result.lines*result.lines;
+		minLines = Math.min(minLines, result.lines);
+		maxLines = Math.max(maxLines, result.lines);
+		score += result.score;
+		pieces += result.pieces;
+		if (result.isCensored()) {
+			censored++;
+		}
+	}
+
+	/**
+	 * Adds the totals of another summary of the same config.
+	 *
+	 * @param other - the summary to add
+	 */
+	public void merge(ShardSummary other) {
+		games += other.games;
+		lines += other.lines;
+		linesSquared += other.linesSquared;
+		minLines = Math.min(minLines, other.minLines);
+		maxLines = Math.max(maxLines, other.maxLines);
+		score += other.score;
+		pieces += other.pieces;
+		censored += other.censored;
+	}
+
+	/**
+	 * Gets the mean number of lines per game.  Censored games count with the
+	 * lines they cleared before they were stopped.
+	 */
+	public double getMeanLines() {
+		return games == 0 ? 0 : lines/(double)games;
+	}
+
+	/**
+	 * Gets the sample standard deviation of the lines per game.
+	 */
+	public double getStdDevLines() {
+		if (games < 2) {
+			return 0;
+		}
+		double mean = getMeanLines();
+		return Math.sqrt(Math.max(0, (linesSquared - games*mean*mean)/(games - 1)));
+	}
+
+	/**
+	 * Converts the summary to a row of the summary table.
+	 *
+	 * @return - the row
+	 */
+	public TableRow toTableRow() {
+		TableRow row = new TableRow();
+		row.set("games", games);
+		row.set("censored", censored);
+		row.set("meanLevels", getMeanLines());
+		row.set("stdDevLevels", getStdDevLines());
+		row.set("minLevels", minLines);
+		row.set("maxLevels", maxLines);
+		row.set("meanScore", games == 0 ? 0 : score/(double)games);
+		row.set("meanPieces", games == 0 ? 0 : pieces/(double)games);
+		row.set("heightFactor", config.heightFactor);
+		row.set("balanceFactor", config.balanceFactor);
+		row.set("holeFactor", config.holeFactor);
+		row.set("blockFactor", config.blockFactor);
+		row.set("lineFactor", config.lineFactor);
+		return row;
+	}
+
+	/**
+	 * Formats the summary as a JSON object on a single line, with the column
+	 * names of the summary table as keys.
+	 *
+	 * @return - the JSON object
+	 */
+	public String toJson() {
+		return "{\"games\":" + games + ",\"censored\":" + censored + ",\"meanLevels\":" + getMeanLines() + ",\"stdDevLevels\":" + getStdDevLines()
+				+ ",\"minLevels\":" + minLines + ",\"maxLevels\":" + maxLines
+				+ ",\"meanScore\":" + (games == 0 ? 0 : score/(double)games)
+				+ ",\"meanPieces\":" + (games == 0 ? 0 : pieces/(double)games)
+				+ ",\"heightFactor\":" + config.heightFactor + ",\"balanceFactor\":" + config.balanceFactor
+				+ ",\"holeFactor\":" + config.holeFactor + ",\"blockFactor\":" + config.blockFactor
+				+ ",\"lineFactor\":" + config.lineFactor + "}";
+	}
+}
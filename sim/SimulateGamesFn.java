@@ -0,0 +1,125 @@
+package sim;
+
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.values.TupleTag;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.Game;
+import sim.tetris.GameBudget;
+import sim.tetris.GameResult;
+
+import com.google.api.services.bigquery.model.TableRow;
+
+/**
+ * Plays every game of a shard, and outputs a summary of the shard.  When
+ * enabled, the result of each game is also output to the GAMES tag.
+ *
+ * <p>The game, its level and the agent's scratch buffers are created once
+ * per instance in setup, and reset for each game.  The work of the games is
+ * reported as SimulationMetrics.
+ */
+public class SimulateGamesFn extends DoFn<SimulationShard, ShardSummary> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the summaries of the shards */
+	public static final TupleTag<ShardSummary> SUMMARIES = new TupleTag<ShardSummary>() {
+		private static final long serialVersionUID = 1L;
+	};
+
+	/** the result of each game */
+	public static final TupleTag<GameResult> GAMES = new TupleTag<GameResult>() {
+		private static final long serialVersionUID = 1L;
+	};
+
+	/** tells if a row is output for each game */
+	private final boolean outputGames;
+
+	/** the limits on the length of each game */
+	private final GameBudget budget;
+
+	/** the game that is reset for every seed */
+	private transient Game game;
+
+	/** the metrics of the games played by this instance */
+	private transient SimulationMetrics metrics;
+
+	/**
+	 * Creates the function.
+	 *
+	 * @param outputGames - true to output a row for each game
+	 */
+	public SimulateGamesFn(boolean outputGames) {
+		this(outputGames, GameBudget.NONE);
+	}
+
+	/**
+	 * Creates the function.
+	 *
+	 * @param outputGames - true to output a row for each game
+	 * @param budget - the limits on the length of each game
+	 */
+	public SimulateGamesFn(boolean outputGames, GameBudget budget) {
+		this.outputGames = outputGames;
+		this.budget = budget;
+	}
+
+	@Setup
+	public void setup() {
+		game = new Game(0, new AgentConfig(1, 1, 1, 1, 1));
+		game.setHeadless(true);
+		game.setDirectPlacement(true);
+		game.setBudget(budget);
+		metrics = new SimulationMetrics();
+	}
+
+	@ProcessElement
+	public void processElement(ProcessContext c) {
+		SimulationShard shard = c.element();
+		ShardSummary summary = new ShardSummary(shard.config);
+
+		for (int seed : shard.seeds) {
+
+			// play the game
+			game.reset(seed, shard.config);
+			game.runSimulation();
+			GameResult result = game.getResult();
+			summary.add(result);
+			metrics.addSearch(game.getSearchStats(), result.pieces);
+			metrics.addGame(result);
+
+			// save the results
+			if (outputGames) {
+				c.output(GAMES, result);
+			}
+		}
+
+		c.output(summary);
+	}
+
+	@FinishBundle
+	public void finishBundle() {
+		metrics.flush();
+	}
+
+	/**
+	 * Converts the result of a game to a row of the results table.
+	 *
+	 * @param result - the result of the game
+	 * @return - the row
+	 */
+	public static TableRow toTableRow(GameResult result) {
+		TableRow row = new TableRow();
+		row.set("seed", result.seed);
+		row.set("levels", result.lines);
+		row.set("score", result.score);
+		row.set("pieces", result.pieces);
+		row.set("status", result.status.name());
+		row.set("heightFactor", result.config.heightFactor);
+		row.set("balanceFactor", result.config.balanceFactor);
+		row.set("holeFactor", result.config.holeFactor);
+		row.set("blockFactor", result.config.blockFactor);
+		row.set("lineFactor", result.config.lineFactor);
+		return row;
+	}
+}
@@ -0,0 +1,117 @@
+package sim;
+
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
+
+import sim.tetris.GameResult;
+import sim.tetris.SearchStats;
+
+/**
+ * The Beam metrics of the simulation DoFns, which show in the runner's
+ * console how many games and blocks each step plays, and how much search
+ * the agent does per block.
+ *
+ * <p>Updating a Beam metric looks up the metrics container of the thread,
+ * so the totals are kept in plain fields of the DoFn instance, and only
+ * added to the counters by flush at the end of each bundle.  The
+ * distributions are updated once per game or call, with the means over its
+ * blocks, instead of once per block.
+ */
+public class SimulationMetrics {
+
+	/** the namespace of the metrics */
+	public static final String NAMESPACE = "simulation";
+
+	private final Counter games = Metrics.counter(NAMESPACE, "games");
+	private final Counter censoredGames = Metrics.counter(NAMESPACE, "censoredGames");
+	private final Counter pieces = Metrics.counter(NAMESPACE, "pieces");
+	private final Counter lines = Metrics.counter(NAMESPACE, "lines");
+	private final Counter decisions = Metrics.counter(NAMESPACE, "decisions");
+	private final Counter candidatesGenerated = Metrics.counter(NAMESPACE, "candidatesGenerated");
+	private final Counter candidatesEvaluated = Metrics.counter(NAMESPACE, "candidatesEvaluated");
+	private final Counter decisionNanos = Metrics.counter(NAMESPACE, "decisionNanos");
+
+	/** the number of blocks of each game */
+	private final Distribution gameLength = Metrics.distribution(NAMESPACE, "gameLength");
+
+	/** the mean number of placements generated per block */
+	private final Distribution generatedPerPiece = Metrics.distribution(NAMESPACE, "generatedPerPiece");
+
+	/** the mean number of levels evaluated per block, cache hits excluded */
+	private final Distribution evaluatedPerPiece = Metrics.distribution(NAMESPACE, "evaluatedPerPiece");
+
+	/** the mean time of a decision, in nanoseconds */
+	private final Distribution nanosPerDecision = Metrics.distribution(NAMESPACE, "nanosPerDecision");
+
+	// the totals since the last flush
+	private long pendingGames = 0;
+	private long pendingCensored = 0;
+	private long pendingPieces = 0;
+	private long pendingLines = 0;
+	private long pendingDecisions = 0;
+	private long pendingGenerated = 0;
+	private long pendingEvaluated = 0;
+	private long pendingNanos = 0;
+
+	/**
+	 * Adds the search done for a number of blocks, and clears the counters
+	 * of the agent.
+	 *
+	 * @param stats - the counters of the agent
+	 * @param placed - the number of blocks added to the level
+	 */
+	public void addSearch(SearchStats stats, long placed) {
+		pendingPieces += placed;
+
+		long count = stats.getDecisions();
+		if (count > 0) {
+			pendingDecisions += count;
+			pendingGenerated += stats.getGenerated();
+			pendingEvaluated += stats.getEvaluated();
+			pendingNanos += stats.getNanos();
+
+			generatedPerPiece.update(stats.getGenerated()/count);
+			evaluatedPerPiece.update(stats.getEvaluated()/count);
+			nanosPerDecision.update(stats.getNanos()/count);
+		}
+		stats.clear();
+	}
+
+	/**
+	 * Adds a game that has ended.
+	 *
+	 * @param result - the result of the game
+	 */
+	public void addGame(GameResult result) {
+		pendingGames++;
+		pendingLines += result.lines;
+		if (result.isCensored()) {
+			pendingCensored++;
+		}
+		gameLength.update(result.pieces);
+	}
+
+	/**
+	 * Adds the totals to the counters.  Called at the end of each bundle.
+	 */
+	public void flush() {
+		games.inc(pendingGames);
+		censoredGames.inc(pendingCensored);
+		pieces.inc(pendingPieces);
+		lines.inc(pendingLines);
+		decisions.inc(pendingDecisions);
+		candidatesGenerated.inc(pendingGenerated);
+		candidatesEvaluated.inc(pendingEvaluated);
+		decisionNanos.inc(pendingNanos);
+
+		pendingGames = 0;
+		pendingCensored = 0;
+		pendingPieces = 0;
+		pendingLines = 0;
+		pendingDecisions = 0;
+		pendingGenerated = 0;
+		pendingEvaluated = 0;
+		pendingNanos = 0;
+	}
+}
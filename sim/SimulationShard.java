@@ -0,0 +1,32 @@
+package sim;
+
+import java.io.Serializable;
+
+import sim.tetris.AgentConfig;
+
+/**
+ * A batch of games for the simulation pipeline: one agent config played on
+ * several seeds.  Grouping the seeds keeps the number of elements, and the
+ * per-element overhead, small compared with the number of games.
+ */
+public class SimulationShard implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the factors of the agent */
+	public final AgentConfig config;
+
+	/** the seeds to play */
+	public final int[] seeds;
+
+	/**
+	 * Creates a shard.
+	 *
+	 * @param config - the factors of the agent
+	 * @param seeds - the seeds to play
+	 */
+	public SimulationShard(AgentConfig config, int[] seeds) {
+		this.config = config;
+		this.seeds = seeds;
+	}
+}
@@ -1,19 +1,42 @@
 package sim;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
+import org.apache.beam.sdk.io.gcp.bigquery.TableRowJsonCoder;
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.transforms.Values;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TupleTagList;
 
-import sim.tetris.Game;
+import sim.tetris.AgentConfig;
+import sim.tetris.GameBudget;
+import sim.tetris.GameResult;
 
 import com.google.api.services.bigquery.model.TableFieldSchema;
 import com.google.api.services.bigquery.model.TableRow;
@@ -21,6 +44,23 @@ import com.google.api.services.bigquery.model.TableSchema;
 /**
  * Sets up a GCP Dataflow pipeline to simulate thousands of playthroughs of Tetris,
  * and saves the results to BigQuery.
+ *
+ * <p>The agent configs come from a file of comma separated factors
+ * (--configs), a grid of factor values (--grid, see AgentConfig.grid), or
+ * are drawn at random (--randomConfigs).  Every config is played on the
+ * same seeds, so that the configs can be compared with each other.  The
+ * seeds are --numSeeds consecutive seeds from --firstSeed, or the first
+ * seeds of the named seed set given with --seedSet, see SeedSet.
+ *
+ * <p>The seeds of each config are split into shards of --seedsPerShard
+ * games, which are played by one call of SimulateGamesFn.  A summary per
+ * config is written to the summary table, and a row per game to the results
+ * table unless --writeGames=false.  With --output, the results are written
+ * to files in a directory instead of BigQuery, which can be a local
+ * directory on the direct runner or a gs:// path on Dataflow.  Long games can be
+ * capped with --maxPieces, --maxLines and --maxCpuMillis, and are marked
+ * as censored.  With --splittable, every game is an element of its own that
+ * the runner can checkpoint and resume, see SplittableSimulateGameFn.
  */
 public class Simulator {
 	
@@ -32,73 +72,310 @@ public class Simulator {
 
 	/** The table name for the BigQuery output table */
 	private static final String table = "sim_results"	;
+
+	/** The table name for the BigQuery summary table */
+	private static final String summaryTable = "sim_summary";
 	
 	/** Provide an interface for setting theGCS temp location */
 	interface Options extends PipelineOptions, Serializable {
 		String getTempLocation();
 	    void setTempLocation(String value);
+
+	    @Description("File with one comma separated list of factors per line")
+	    String getConfigs();
+	    void setConfigs(String value);
+
+	    @Description("Grid of factor values, e.g. 1/1/10,12,14/1/0.5,1")
+	    String getGrid();
+	    void setGrid(String value);
+
+	    @Description("Number of random configs, if no configs or grid are given")
+	    @Default.Integer(10)
+	    int getRandomConfigs();
+	    void setRandomConfigs(int value);
+
+	    @Description("Number of seeds each config is played on")
+	    @Default.Integer(1)
+	    int getNumSeeds();
+	    void setNumSeeds(int value);
+
+	    @Description("The first seed, the seeds are consecutive")
+	    @Default.Integer(0)
+	    int getFirstSeed();
+	    void setFirstSeed(int value);
+
+	    @Description("Named seed set to play, or @file, instead of the seeds from firstSeed")
+	    String getSeedSet();
+	    void setSeedSet(String value);
+
+	    @Description("Number of seeds played by one element of the pipeline")
+	    @Default.Integer(10)
+	    int getSeedsPerShard();
+	    void setSeedsPerShard(int value);
+
+	    @Description("Write a row for every game, not just a summary per config")
+	    @Default.Boolean(true)
+	    boolean getWriteGames();
+	    void setWriteGames(boolean value);
+
+	    @Description("Most blocks played per game, 0 for no limit")
+	    @Default.Integer(0)
+	    int getMaxPieces();
+	    void setMaxPieces(int value);
+
+	    @Description("Most lines cleared per game, 0 for no limit")
+	    @Default.Integer(0)
+	    int getMaxLines();
+	    void setMaxLines(int value);
+
+	    @Description("Most CPU milliseconds per game, 0 for no limit")
+	    @Default.Long(0)
+	    long getMaxCpuMillis();
+	    void setMaxCpuMillis(long value);
+
+	    @Description("Play each game with a splittable DoFn that the runner can checkpoint")
+	    @Default.Boolean(false)
+	    boolean getSplittable();
+	    void setSplittable(boolean value);
+
+	    @Description("Directory to write the results to, such as gs://bucket/results, instead of BigQuery")
+	    String getOutput();
+	    void setOutput(String value);
+
+	    @Description("Extension of the local result files: .csv, .ndjson, optionally with .gz")
+	    @Default.String(".csv")
+	    String getOutputExtension();
+	    void setOutputExtension(String value);
 	}
 	
+	/**
+	 * Splits the seeds of each config into shards, keyed by a random number 
+	 * so that the shards can be redistributed across workers.
+	 */
+	static class ShardSeeds extends DoFn<AgentConfig, KV<Integer, SimulationShard>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final PCollectionView<List<Integer>> seeds;
+
+		private final int seedsPerShard;
+
+		private transient Random random;
+
+		ShardSeeds(PCollectionView<List<Integer>> seeds, int seedsPerShard) {
+			this.seeds = seeds;
+			this.seedsPerShard = seedsPerShard;
+		}
+
+		@ProcessElement
+		public void processElement(ProcessContext c) {
+			if (random == null) {
+				random = new Random();
+			}
+
+			List<Integer> list = c.sideInput(seeds);
+			for (int start=0; start<list.size(); start+=seedsPerShard) {
+				int[] shard = new int[Math.min(seedsPerShard, list.size() - start)];
+				for (int i=0; i<shard.length; i++) {
+					shard[i] = list.get(start + i);
+				}
+				c.output(KV.of(random.nextInt(), new SimulationShard(c.element(), shard)));
+			}
+		}
+	}
 
 	/**
-	 * Run the level simulation pipeline.
+	 * Merges the summaries of the shards of a config.
 	 */
-	public static void main(String[] args) {
-		
-		// create different random seeds to evaluate
-		Random rand = new Random();
-		ArrayList<Integer> seeds = new ArrayList<>();
-		for (int i=0; i<10; i++) {
-			seeds.add(rand.nextInt());
+	static class MergeSummaries implements SerializableFunction<Iterable<ShardSummary>, ShardSummary> {
+
+		private static final long serialVersionUID = 1L;
+
+		public ShardSummary apply(Iterable<ShardSummary> summaries) {
+			ShardSummary merged = null;
+			for (ShardSummary summary : summaries) {
+				if (merged == null) {
+					merged = new ShardSummary(summary.config);
+				}
+				merged.merge(summary);
+			}
+			return merged;
 		}
+	}
 
+	/**
+	 * Run the level simulation pipeline.
+	 */
+	public static void main(String[] args) throws IOException {
+		
 	    // create the schema for the results table
 	    List<TableFieldSchema> fields = new ArrayList<>();
+	    fields.add(new TableFieldSchema().setName("seed").setType("INT64"));
 	    fields.add(new TableFieldSchema().setName("levels").setType("INT64"));
+	    fields.add(new TableFieldSchema().setName("score").setType("INT64"));
+	    fields.add(new TableFieldSchema().setName("pieces").setType("INT64"));
+	    fields.add(new TableFieldSchema().setName("status").setType("STRING"));
 	    fields.add(new TableFieldSchema().setName("heightFactor").setType("FLOAT64"));
 	    fields.add(new TableFieldSchema().setName("balanceFactor").setType("FLOAT64"));
 	    fields.add(new TableFieldSchema().setName("holeFactor").setType("FLOAT64"));
 	    fields.add(new TableFieldSchema().setName("blockFactor").setType("FLOAT64"));
 	    fields.add(new TableFieldSchema().setName("lineFactor").setType("FLOAT64"));
 	    TableSchema schema = new TableSchema().setFields(fields);
+
+	    // create the schema for the summary table
+	    List<TableFieldSchema> summaryFields = new ArrayList<>();
+	    summaryFields.add(new TableFieldSchema().setName("games").setType("INT64"));
+	    summaryFields.add(new TableFieldSchema().setName("censored").setType("INT64"));
+	    summaryFields.add(new TableFieldSchema().setName("meanLevels").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("stdDevLevels").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("minLevels").setType("INT64"));
+	    summaryFields.add(new TableFieldSchema().setName("maxLevels").setType("INT64"));
+	    summaryFields.add(new TableFieldSchema().setName("meanScore").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("meanPieces").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("heightFactor").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("balanceFactor").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("holeFactor").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("blockFactor").setType("FLOAT64"));
+	    summaryFields.add(new TableFieldSchema().setName("lineFactor").setType("FLOAT64"));
+	    TableSchema summarySchema = new TableSchema().setFields(summaryFields);
 		
 		// set up the dataflow pipeline 
 	    Simulator.Options options = PipelineOptionsFactory.fromArgs(args).withValidation().as(Simulator.Options.class);
 	    Pipeline pipeline = Pipeline.create(options);
 
-	    // create a PCollection using the seeds collection 
-	    pipeline.apply(Create.of(seeds)) 
+	    // the seeds that every config is played on
+		SeedSet seedSet = options.getSeedSet() != null ? SeedSet.parse(options.getSeedSet()) : SeedSet.range(options.getFirstSeed());
+		ArrayList<Integer> seeds = new ArrayList<>();
+		for (int seed : seedSet.getSeeds(0, options.getNumSeeds())) {
+			seeds.add(seed);
+		}
+	    PCollectionView<List<Integer>> seedView = pipeline.apply("Seeds", Create.of(seeds)).apply(View.<Integer>asList());
 	    
-	    // run a game simulation for each of the seeds
-        .apply("Simulate Games", ParDo.of(new DoFn<Integer, TableRow>() {
-
-        	@ProcessElement
-        	public void processElement(ProcessContext c) throws Exception {
-        		Integer seed = c.element();
-        	
-        		// play the game
-	      		Game game = new Game(seed);
-	    		int levels = game.runSimulation();
-	      			    		
-	      		// save the results 
-	    		TableRow results = new TableRow();
-	    		results.set("levels", levels);
-	    		results.set("heightFactor", game.getHeightFactor());
-	    		results.set("balanceFactor", game.getBalanceFactor());
-	    		results.set("holeFactor", game.getHoleFactor());
-	    		results.set("blockFactor", game.getBlockFactor());
-	    		results.set("lineFactor", game.getLineFactor());
-	    		
-	    		// pass the stats to the next step in the pipeline 
-	            c.output(results);
-            }
-        }))
-	    // write the results to BigQuery 	
-	    .apply(BigQueryIO.writeTableRows() .to(String.format("%s:%s.%s", PROJECT_ID, dataset, table))
+	    // create a PCollection of the configs to evaluate
+	    PCollection<AgentConfig> configs;
+	    if (options.getConfigs() != null) {
+	    	configs = pipeline.apply("Read Configs", TextIO.read().from(options.getConfigs()))
+	    		.apply("Parse Configs", ParDo.of(new DoFn<String, AgentConfig>() {
+
+	    			@ProcessElement
+	    			public void processElement(ProcessContext c) {
+	    				String line = c.element().trim();
+	    				if (!line.isEmpty() && !line.startsWith("#")) {
+	    					c.output(AgentConfig.parse(line));
+	    				}
+	    			}
+	    		}));
+	    }
+	    else {
+	    	List<AgentConfig> list;
+	    	if (options.getGrid() != null) {
+	    		list = AgentConfig.grid(options.getGrid());
+	    	}
+	    	else {
+	    		Random rand = new Random();
+	    		list = new ArrayList<>();
+	    		for (int i=0; i<options.getRandomConfigs(); i++) {
+	    			list.add(AgentConfig.random(rand));
+	    		}
+	    	}
+	    	configs = pipeline.apply("Configs", Create.of(list).withCoder(SerializableCoder.of(AgentConfig.class)));
+	    }
+	    GameBudget budget = new GameBudget(options.getMaxPieces(), options.getMaxLines(), options.getMaxCpuMillis());
+	    int seedsPerShard = options.getSplittable() ? 1 : options.getSeedsPerShard();
+	    PCollection<SimulationShard> shards = configs.setCoder(SerializableCoder.of(AgentConfig.class))
+
+	    // split the seeds of every config into shards, and spread them over the workers
+	    // by grouping on their random keys, which also breaks the fusion with the games
+	    .apply("Shard Seeds", ParDo.of(new ShardSeeds(seedView, seedsPerShard)).withSideInputs(seedView))
+	    .setCoder(KvCoder.of(VarIntCoder.of(), SerializableCoder.of(SimulationShard.class)))
+	    .apply("Spread Shards", GroupByKey.<Integer, SimulationShard>create())
+	    .apply(Values.<Iterable<SimulationShard>>create())
+	    .apply(Flatten.<SimulationShard>iterables());
+
+	    // run a game simulation for each config and seed
+	    PCollection<ShardSummary> shardSummaries;
+	    PCollection<GameResult> games;
+	    if (options.getSplittable()) {
+	    	games = shards.apply("Simulate Games", ParDo.of(new SplittableSimulateGameFn(budget)))
+	    			.setCoder(SerializableCoder.of(GameResult.class));
+	    	shardSummaries = games.apply("Summarize Games", ParDo.of(new DoFn<GameResult, ShardSummary>() {
+
+	    		@ProcessElement
+	    		public void processElement(ProcessContext c) {
+	    			ShardSummary summary = new ShardSummary(c.element().config);
+	    			summary.add(c.element());
+	    			c.output(summary);
+	    		}
+	    	}));
+	    }
+	    else {
+	    	PCollectionTuple outputs = shards.apply("Simulate Games", ParDo.of(new SimulateGamesFn(options.getWriteGames(), budget))
+	    			.withOutputTags(SimulateGamesFn.SUMMARIES, TupleTagList.of(SimulateGamesFn.GAMES)));
+	    	shardSummaries = outputs.get(SimulateGamesFn.SUMMARIES);
+	    	games = outputs.get(SimulateGamesFn.GAMES).setCoder(SerializableCoder.of(GameResult.class));
+	    }
+
+	    // merge the summaries of each config
+	    PCollection<ShardSummary> summaries = shardSummaries.setCoder(SerializableCoder.of(ShardSummary.class))
+	    .apply("Key By Config", WithKeys.of(new SerializableFunction<ShardSummary, String>() {
+	    	private static final long serialVersionUID = 1L;
+
+	    	public String apply(ShardSummary summary) {
+	    		return summary.config.toString();
+	    	}
+	    }))
+	    .setCoder(KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(ShardSummary.class)))
+	    .apply("Merge Shards", Combine.<String, ShardSummary>perKey(new MergeSummaries()))
+	    .apply(Values.<ShardSummary>create());
+
+	    // write the results to local files
+	    if (options.getOutput() != null) {
+	    	summaries.apply("Format Summaries", ParDo.of(new DoFn<ShardSummary, String>() {
+
+	    		@ProcessElement
+	    		public void processElement(ProcessContext c) {
+	    			c.output(c.element().toJson());
+	    		}
+	    	}))
+	    	.apply("Write Summaries", TextIO.write().to(options.getOutput() + "/summary").withSuffix(".ndjson"));
+
+	    	if (options.getWriteGames()) {
+	    		games.apply("Write Games", ParDo.of(new WriteResultsFn(options.getOutput(), options.getOutputExtension())));
+	    	}
+	    }
+
+	    // write the results to BigQuery
+	    else {
+	    	summaries.apply("Format Summaries", ParDo.of(new DoFn<ShardSummary, TableRow>() {
+
+	    		@ProcessElement
+	    		public void processElement(ProcessContext c) {
+	    			c.output(c.element().toTableRow());
+	    		}
+	    	}))
+	    	.setCoder(TableRowJsonCoder.of())
+	    	.apply("Write Summaries", BigQueryIO.writeTableRows() .to(String.format("%s:%s.%s", PROJECT_ID, dataset, summaryTable))
+	            .withCreateDisposition(BigQueryIO.Write.CreateDisposition.CREATE_IF_NEEDED)
+	            .withWriteDisposition(BigQueryIO.Write.WriteDisposition.WRITE_TRUNCATE)
+	            .withSchema(summarySchema)
+	    	);
+
+	    	if (options.getWriteGames()) {
+	    		games.apply("Format Games", ParDo.of(new DoFn<GameResult, TableRow>() {
+
+	    			@ProcessElement
+	    			public void processElement(ProcessContext c) {
+	    				c.output(SimulateGamesFn.toTableRow(c.element()));
+	    			}
+	    		}))
+	    		.setCoder(TableRowJsonCoder.of())
+	    		.apply("Write Games", BigQueryIO.writeTableRows() .to(String.format("%s:%s.%s", PROJECT_ID, dataset, table))
 	            .withCreateDisposition(BigQueryIO.Write.CreateDisposition.CREATE_IF_NEEDED)
 	            .withWriteDisposition(BigQueryIO.Write.WriteDisposition.WRITE_TRUNCATE)
 	            .withSchema(schema)
-	    );
+	    		);
+	    	}
+	    }
 	    
 	    // run the pipeline
 	    pipeline.run();
@@ -0,0 +1,156 @@
+package sim;
+
+import java.nio.ByteBuffer;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.transforms.DoFn;
+
+import sim.tetris.AgentConfig;
+import sim.tetris.Game;
+import sim.tetris.GameBudget;
+import sim.tetris.GameResult;
+
+/**
+ * Plays a game as a splittable DoFn, so that the runner can checkpoint a
+ * long game and resume it on another worker instead of waiting for a single
+ * call to finish.  The restriction is a GameCheckpoint: the range of block
+ * indexes that is left to play, where index i is claimed before the (i+1)th
+ * block is added to the level, and a snapshot of the game before the range.
+ * The result is output by the call that finishes the game.
+ *
+ * <p>The shards must hold a single seed.  The piece and line limits of the
+ * budget are applied, but not the CPU time, since a game can be split across
+ * workers.
+ */
+@DoFn.BoundedPerElement
+public class SplittableSimulateGameFn extends DoFn<SimulationShard, GameResult> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the limits on the length of each game */
+	private final GameBudget budget;
+
+	/** the game that is reset for every element */
+	private transient Game game;
+
+	/** the metrics of the blocks played by this instance */
+	private transient SimulationMetrics metrics;
+
+	/**
+	 * Creates the function.
+	 *
+	 * @param budget - the limits on the length of each game
+	 */
+	public SplittableSimulateGameFn(GameBudget budget) {
+		this.budget = budget;
+	}
+
+	@Setup
+	public void setup() {
+		game = new Game(0, new AgentConfig(1, 1, 1, 1, 1));
+		game.setHeadless(true);
+		game.setDirectPlacement(true);
+		metrics = new SimulationMetrics();
+	}
+
+	@ProcessElement
+	public ProcessContinuation processElement(ProcessContext c, GameCheckpointTracker tracker) {
+		SimulationShard shard = c.element();
+		GameCheckpoint checkpoint = tracker.currentRestriction();
+		if (checkpoint.from >= checkpoint.to) {
+			return ProcessContinuation.stop();
+		}
+
+		// continue the game where the last checkpoint left it
+		if (checkpoint.snapshot != null) {
+			game.readFrom(ByteBuffer.wrap(checkpoint.snapshot));
+			if (game.getStatus() != GameResult.Status.RUNNING) {
+
+				// a checkpoint that was taken as the game ended
+				tracker.markDone();
+				return ProcessContinuation.stop();
+			}
+		}
+		else {
+			game.reset(shard.seeds[0], shard.config);
+		}
+		tracker.attach(game);
+		game.getSearchStats().clear();
+		int start = game.getPieces();
+
+		for (long i = checkpoint.from; ; i++) {
+			boolean alive;
+			synchronized (tracker) {
+				if (!tracker.tryClaim(i)) {
+					break;
+				}
+
+				alive = game.playBlock();
+				if (alive && budget.maxLines > 0 && game.getLines() >= budget.maxLines) {
+					game.setStatus(GameResult.Status.MAX_LINES);
+					alive = false;
+				}
+			}
+
+			if (!alive) {
+				finish(c, start);
+				tracker.markDone();
+				return ProcessContinuation.stop();
+			}
+		}
+
+		// every block of the budget was played
+		if (game.getPieces() >= getPieceLimit()) {
+			game.setStatus(GameResult.Status.MAX_PIECES);
+			finish(c, start);
+			return ProcessContinuation.stop();
+		}
+
+		// the runner took a checkpoint, the rest is played by another call
+		metrics.addSearch(game.getSearchStats(), game.getPieces() - start);
+		return ProcessContinuation.resume();
+	}
+
+	@FinishBundle
+	public void finishBundle() {
+		metrics.flush();
+	}
+
+	/**
+	 * Outputs the result of the game, and adds it to the metrics.
+	 *
+	 * @param start - the number of blocks played before this call
+	 */
+	private void finish(ProcessContext c, int start) {
+		GameResult result = game.getResult();
+		metrics.addSearch(game.getSearchStats(), result.pieces - start);
+		metrics.addGame(result);
+		c.output(result);
+	}
+
+	@GetInitialRestriction
+	public GameCheckpoint getInitialRestriction(SimulationShard shard) {
+		if (shard.seeds.length != 1) {
+			throw new IllegalArgumentException("Shards of a splittable game must have one seed");
+		}
+		return new GameCheckpoint(0, getPieceLimit(), null);
+	}
+
+	@NewTracker
+	public GameCheckpointTracker newTracker(GameCheckpoint checkpoint) {
+		return new GameCheckpointTracker(checkpoint);
+	}
+
+	@GetRestrictionCoder
+	public Coder<GameCheckpoint> getRestrictionCoder() {
+		return SerializableCoder.of(GameCheckpoint.class);
+	}
+
+	/**
+	 * Gets the index after the last block that may be played.
+	 */
+	private long getPieceLimit() {
+		return budget.maxPieces > 0 ? budget.maxPieces : Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,211 @@
+package sim;
+
+/**
+ * Small statistics used to compare configs played on the same seeds.  The
+ * samples are lines per game, indexed by seed, so that two arrays of the
+ * same length hold paired observations.  Comparing the differences seed by
+ * seed removes the variance that comes from the seeds, which is most of the
+ * variance of the lines per game.
+ */
+public final class Statistics {
+
+	private Statistics() {
+	}
+
+	/**
+	 * Gets the mean of the first n values.
+	 */
+	public static double mean(double[] values, int n) {
+		double sum = 0;
+		for (int i=0; i<n; i++) {
+			sum += values[i];
+		}
+		return n == 0 ? 0 : sum/n;
+	}
+
+	/**
+	 * Gets the sample standard deviation of the first n values.
+	 */
+	public static double stdDev(double[] values, int n) {
+		if (n < 2) {
+			return 0;
+		}
+
+		double mean = mean(values, n);
+		double sum = 0;
+		for (int i=0; i<n; i++) {
+			sum += (values[i] - mean)*(values[i] - mean);
+		}
+		return Math.sqrt(sum/(n - 1));
+	}
+
+	/**
+	 * Gets the differences a - b of the first n paired values.
+	 */
+	public static double[] differences(double[] a, double[] b, int n) {
+		double[] differences = new double[n];
+		for (int i=0; i<n; i++) {
+			differences[i] = a[i] - b[i];
+		}
+		return differences;
+	}
+
+	/**
+	 * Gets the half width of the t confidence interval of the mean of the
+	 * first n values.  For the interval of a difference between two configs,
+	 * pass the paired differences.
+	 *
+	 * @param values - the values
+	 * @param n - the number of values, at least 2
+	 * @param confidence - the confidence level, such as 0.95
+	 * @return - the half width, so that the interval is the mean plus or
+	 *           minus it
+	 */
+	public static double halfWidth(double[] values, int n, double confidence) {
+		if (n < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return tQuantile((1 + confidence)/2, n - 1)*stdDev(values, n)/Math.sqrt(n);
+	}
+
+	/**
+	 * Gets the two sided p-value of a t statistic.
+	 *
+	 * @param t - the t statistic
+	 * @param df - the degrees of freedom, at least 1
+	 * @return - P(|T| &gt; |t|)
+	 */
+	public static double pValue(double t, int df) {
+		return 2*(1 - tCdf(Math.abs(t), df));
+	}
+
+	/**
+	 * Gets the t statistic of the paired differences a - b over the first n
+	 * seeds.
+	 *
+	 * @param a - the lines per seed of the first config
+	 * @param b - the lines per seed of the second config
+	 * @param n - the number of seeds both configs played
+	 * @return - the t statistic, infinite if every difference is the same
+	 *           and not zero, and 0 with fewer than 2 seeds
+	 */
+	public static double pairedT(double[] a, double[] b, int n) {
+		if (n < 2) {
+			return 0;
+		}
+
+		double[] differences = differences(a, b, n);
+		double mean = mean(differences, n);
+		double error = stdDev(differences, n)/Math.sqrt(n);
+		if (error == 0) {
+			return mean == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, mean);
+		}
+		return mean/error;
+	}
+
+	/**
+	 * Gets a quantile of the standard normal distribution, with the rational
+	 * approximation of Acklam, which has a relative error below 1.2e-9.
+	 *
+	 * @param p - the probability, between 0 and 1 exclusive
+	 * @return - the value z with P(Z &lt; z) = p
+	 */
+	public static double normalQuantile(double p) {
+		if (p <= 0 || p >= 1) {
+			throw new IllegalArgumentException("The probability must be between 0 and 1: " + p);
+		}
+
+		double[] a = { -39.69683028665376, 220.9460984245205, -275.9285104469687, 138.3577518672690, -30.66479806614716, 2.506628277459239 };
+		double[] b = { -54.47609879822406, 161.5858368580409, -155.6989798598866, 66.80131188771972, -13.28068155288572 };
+		double[] c = { -0.007784894002430293, -0.3223964580411365, -2.400758277161838, -2.549732539343734, 4.374664141464968, 2.938163982698783 };
+		double[] d = { 0.007784695709041462, 0.3224671290700398, 2.445134137142996, 3.754408661907416 };
+
+		if (p < 0.02425 || p > 1 - 0.02425) {
+			double q = Math.sqrt(-2*Math.log(Math.min(p, 1 - p)));
+			double z = (((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5]) / ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1);
+			return p < 0.5 ? z : -z;
+		}
+
+		double q = p - 0.5;
+		double r = q*q;
+		return (((((a[0]*r + a[1])*r + a[2])*r + a[3])*r + a[4])*r + a[5])*q
+				/ (((((b[0]*r + b[1])*r + b[2])*r + b[3])*r + b[4])*r + 1);
+	}
+
+	/**
+	 * Gets the cumulative distribution function of Student's t distribution,
+	 * with the finite series of Abramowitz and Stegun 26.7.3 and 26.7.4 for
+	 * whole degrees of freedom.
+	 *
+	 * @param t - the value
+	 * @param df - the degrees of freedom, at least 1
+	 * @return - P(T &lt; t)
+	 */
+	public static double tCdf(double t, int df) {
+		if (df < 1) {
+			throw new IllegalArgumentException("The degrees of freedom must be at least 1: " + df);
+		}
+		if (Double.isInfinite(t)) {
+			return t > 0 ? 1 : 0;
+		}
+
+		// A is the probability that |T| is below |t|
+		double theta = Math.atan(Math.abs(t)/Math.sqrt(df));
+		double cos2 = Math.cos(theta)*Math.cos(theta);
+		double a;
+		if (df % 2 == 1) {
+			double sum = 0;
+			double term = Math.cos(theta);
+			for (int k=3; k<=df; k+=2) {
+				sum += term;
+				term *= cos2*(k - 1)/k;
+			}
+			a = 2/Math.PI*(theta + Math.sin(theta)*sum);
+		}
+		else {
+			double sum = 0;
+			double term = 1;
+			for (int k=2; k<=df; k+=2) {
+				sum += term;
+				term *= cos2*(k - 1)/k;
+			}
+			a = Math.sin(theta)*sum;
+		}
+
+		return t >= 0 ? 0.5 + a/2 : 0.5 - a/2;
+	}
+
+	/**
+	 * Gets a quantile of Student's t distribution, by bisection of tCdf.
+	 *
+	 * @param p - the probability, between 0 and 1 exclusive
+	 * @param df - the degrees of freedom, at least 1
+	 * @return - the value t with P(T &lt; t) = p
+	 */
+	public static double tQuantile(double p, int df) {
+		if (p <= 0 || p >= 1) {
+			throw new IllegalArgumentException("The probability must be between 0 and 1: " + p);
+		}
+		if (p < 0.5) {
+			return -tQuantile(1 - p, df);
+		}
+
+		// the normal quantile is a lower bound, and the bound doubles until it is above
+		double low = normalQuantile(p);
+		double high = Math.max(1, 2*low);
+		while (tCdf(high, df) < p) {
+			low = high;
+			high *= 2;
+		}
+		for (int i=0; i<100 && high - low > 1e-12*high; i++) {
+			double middle = (low + high)/2;
+			if (tCdf(middle, df) < p) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return (low + high)/2;
+	}
+}
@@ -0,0 +1,101 @@
+package sim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.ResolveOptions.StandardResolveOptions;
+import org.apache.beam.sdk.io.fs.ResourceId;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.util.MimeTypes;
+
+import sim.tetris.GameResult;
+
+/**
+ * Writes the results of a pipeline to files, as an alternative to BigQueryIO.
+ * The directory can be on any file system the runner supports, such as a
+ * local directory on the direct runner, or gs:// on Dataflow.
+ *
+ * <p>Each bundle is written through a FileResultSink to a temporary file in
+ * the directory, which is renamed to results-UUID when the bundle finishes.
+ * A bundle that fails and is retried only leaves a .temp file behind, so the
+ * results files never hold partial bundles.  Bundles without results write
+ * no file.
+ */
+public class WriteResultsFn extends DoFn<GameResult, Void> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the size of the buffer of the gzip stream, in bytes */
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+	/** the directory of the files */
+	private final String directory;
+
+	/** the extension of the files, which picks the format and compression */
+	private final String extension;
+
+	/** the sink of the current bundle, opened by its first result */
+	private transient ResultSink sink;
+
+	/** the file the sink writes to */
+	private transient ResourceId tempFile;
+
+	/** the name of the file when the bundle finishes */
+	private transient ResourceId file;
+
+	/**
+	 * Creates the function.
+	 *
+	 * @param directory - the directory of the files, created if needed
+	 * @param extension - the extension of the files, such as .csv or .ndjson.gz
+	 */
+	public WriteResultsFn(String directory, String extension) {
+		this.directory = directory;
+		this.extension = extension;
+	}
+
+	@StartBundle
+	public void startBundle() {
+		sink = null;
+	}
+
+	@ProcessElement
+	public void processElement(ProcessContext c) throws IOException {
+		if (sink == null) {
+			open();
+		}
+		sink.accept(c.element());
+	}
+
+	@FinishBundle
+	public void finishBundle() throws IOException {
+		if (sink == null) {
+			return;
+		}
+
+		sink.close();
+		sink = null;
+		FileSystems.rename(Collections.singletonList(tempFile), Collections.singletonList(file));
+	}
+
+	/**
+	 * Opens the sink of the bundle, on a new temporary file.
+	 */
+	private void open() throws IOException {
+		String id = UUID.randomUUID().toString();
+		ResourceId dir = FileSystems.matchNewResource(directory, true);
+		tempFile = dir.resolve(".temp-" + id + extension, StandardResolveOptions.RESOLVE_FILE);
+		file = dir.resolve("results-" + id + extension, StandardResolveOptions.RESOLVE_FILE);
+
+		OutputStream out = Channels.newOutputStream(FileSystems.create(tempFile, MimeTypes.BINARY));
+		if (extension.endsWith(".gz")) {
+			out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+		}
+		sink = new FileResultSink(out, ResultSink.Format.of(extension));
+	}
+}
@@ -0,0 +1,164 @@
+package sim.tetris;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The factors of a TabuTetrisAgent.  A config can be written as a comma 
+ * separated list of the height, balance, hole, block and line factors, in 
+ * that order.
+ */
+public class AgentConfig implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public final double heightFactor;
+	public final double balanceFactor;
+	public final double holeFactor;
+	public final double blockFactor;
+	public final double lineFactor;
+	
+	/**
+	 * Creates a config.
+	 */
+	public AgentConfig(double heightFactor, double balanceFactor, double holeFactor, 
+			double blockFactor, double lineFactor) {
+		this.heightFactor = heightFactor;
+		this.balanceFactor = balanceFactor;
+		this.holeFactor = holeFactor;
+		this.blockFactor = blockFactor;
+		this.lineFactor = lineFactor;
+	}
+	
+	/**
+	 * Creates a config from a factor vector.
+	 * 
+	 * @param factors - the height, balance, hole, block and line factors
+	 */
+	public AgentConfig(double[] factors) {
+		this(factors[0], factors[1], factors[2], factors[3], factors[4]);
+	}
+	
+	/**
+	 * Creates a random config in the same range as the default factors of
+	 * TabuTetrisAgent.
+	 * 
+	 * @param random - the random number generator
+	 * @return - the config
+	 */
+	public static AgentConfig random(Random random) {
+		return new AgentConfig(1.0 + random.nextDouble()*0.1,
+				1.0 + random.nextDouble()*0.1,
+				12.0 + random.nextDouble()*0.1,
+				1.0 + random.nextDouble()*0.1,
+				1.0 + random.nextDouble()*0.1);
+	}
+	
+	/**
+	 * Parses a config from a comma separated list of factors.
+	 * 
+	 * @param text - the height, balance, hole, block and line factors
+	 * @return - the config
+	 */
+	public static AgentConfig parse(String text) {
+		String[] values = text.trim().split("\\s*,\\s*");
+		if (values.length != 5) {
+			throw new IllegalArgumentException("Expected 5 factors: " + text);
+		}
+		
+		double[] factors = new double[5];
+		for (int i=0; i<5; i++) {
+			factors[i] = Double.parseDouble(values[i]);
+		}
+		return new AgentConfig(factors);
+	}
+	
+	/**
+	 * Creates every combination of factor values in a grid.  The grid lists 
+	 * the values of the height, balance, hole, block and line factors, in that
+	 * order, separated by slashes, with the values of each factor separated by
+	 * commas.  For example "1/1/10,12,14/1/0.5,1" has six configs.
+	 * 
+	 * @param grid - the values of each factor
+	 * @return - the configs, varying the last factor fastest
+	 */
+	public static List<AgentConfig> grid(String grid) {
+		String[] dimensions = grid.trim().split("\\s*/\\s*");
+		if (dimensions.length != 5) {
+			throw new IllegalArgumentException("Expected 5 factors: " + grid);
+		}
+		
+		List<double[]> vectors = new ArrayList<>();
+		vectors.add(new double[5]);
+		for (int i=0; i<5; i++) {
+			List<double[]> expanded = new ArrayList<>();
+			for (double[] vector : vectors) {
+				for (String value : dimensions[i].split("\\s*,\\s*")) {
+					double[] factors = vector.clone();
+					factors[i] = Double.parseDouble(value);
+					expanded.add(factors);
+				}
+			}
+			vectors = expanded;
+		}
+		
+		List<AgentConfig> configs = new ArrayList<>();
+		for (double[] factors : vectors) {
+			configs.add(new AgentConfig(factors));
+		}
+		return configs;
+	}
+	
+	/**
+	 * Gets the factors as a vector.
+	 * 
+	 * @return - the height, balance, hole, block and line factors
+	 */
+	public double[] toArray() {
+		return new double[] { heightFactor, balanceFactor, holeFactor, blockFactor, lineFactor };
+	}
+	
+	/**
+	 * Sets the factors of an agent.
+	 * 
+	 * @param agent - the agent to configure
+	 */
+	public void applyTo(TabuTetrisAgent agent) {
+		agent.HEIGHT_FACTOR = heightFactor;
+		agent.BALANCE_FACTOR = balanceFactor;
+		agent.HOLE_FACTOR = holeFactor;
+		agent.BLOCK_FACTOR = blockFactor;
+		agent.LINE_FACTOR = lineFactor;
+	}
+	
+	/**
+	 * Gets the factors of an agent.
+	 * 
+	 * @param agent - the agent
+	 * @return - the config of the agent
+	 */
+	public static AgentConfig of(TabuTetrisAgent agent) {
+		return new AgentConfig(agent.HEIGHT_FACTOR, agent.BALANCE_FACTOR, agent.HOLE_FACTOR, 
+				agent.BLOCK_FACTOR, agent.LINE_FACTOR);
+	}
+	
+	public boolean equals(Object o) {
+		if (!(o instanceof AgentConfig)) {
+			return false;
+		}
+		AgentConfig c = (AgentConfig)o;
+		return heightFactor == c.heightFactor && balanceFactor == c.balanceFactor 
+				&& holeFactor == c.holeFactor && blockFactor == c.blockFactor 
+				&& lineFactor == c.lineFactor;
+	}
+	
+	public int hashCode() {
+		return java.util.Arrays.hashCode(toArray());
+	}
+	
+	public String toString() {
+		return heightFactor + "," + balanceFactor + "," + holeFactor + "," + blockFactor + "," + lineFactor;
+	}
+}
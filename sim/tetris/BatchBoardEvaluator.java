@@ -0,0 +1,173 @@
+package sim.tetris;
+
+/**
+ * Evaluates the levels of many moves at once.  The features of each level
+ * are taken as it is added, and kept as structure of arrays: the top row of
+ * every column and the counts of holes, covering tiles and lines of each
+ * level, in arrays indexed by the level.  The heuristic is then computed for
+ * all levels in one pass, with the same arithmetic in the same order as
+ * ColumnBoardEvaluator, so the evaluations are the same to the last bit.
+ *
+ * <p>The features are stored as doubles, so that a subclass can compute the
+ * heuristic for several levels at a time with vector instructions.  This
+ * class is the scalar implementation.
+ */
+public class BatchBoardEvaluator {
+
+	/** the number of levels the batch holds */
+	protected final int capacity;
+
+	/**
+	 * the top row of each column, or LEVEL_HEIGHT if it is empty, with the
+	 * tops of column x of every level at x*capacity
+	 */
+	protected final double[] tops;
+
+	/** the number of completed lines of each level */
+	protected final double[] lines;
+
+	/** the row of the highest tile of each level, or LEVEL_HEIGHT if it is empty */
+	protected final double[] highest;
+
+	/** the number of holes of each level */
+	protected final double[] holes;
+
+	/** the number of tiles of the added block above the first hole of their column */
+	protected final double[] blocks;
+
+	/** the number of levels added since the last clear */
+	protected int count = 0;
+
+	/**
+	 * Creates an empty batch.
+	 *
+	 * @param capacity - the most levels added between clears
+	 */
+	public BatchBoardEvaluator(int capacity) {
+		this.capacity = capacity;
+		tops = new double[Level.LEVEL_WIDTH*capacity];
+		lines = new double[capacity];
+		highest = new double[capacity];
+		holes = new double[capacity];
+		blocks = new double[capacity];
+	}
+
+	/**
+	 * Removes every level from the batch.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Adds the features of a level that a block has just been added to.  The
+	 * completed lines are cleared from the level, as by BoardEvaluator, so
+	 * the level can be reused once this returns.
+	 *
+	 * @param level - the level, with the tiles of the added block marked 9
+	 * @return - the index of the level in the batch
+	 */
+	public int add(Level level) {
+		if (count == capacity) {
+			throw new IllegalStateException("The batch is full: " + capacity);
+		}
+
+		int index = count++;
+		lines[index] = level.clearFullLines();
+		int[][] data = level.getLevelData();
+
+		int top = Level.LEVEL_HEIGHT;
+		int holeCount = 0;
+		int blockCount = 0;
+
+		for (int x=0; x<Level.LEVEL_WIDTH; x++) {
+			int column = level.getColumnMask(x);
+			int columnTop = Level.LEVEL_HEIGHT;
+
+			if (column != 0) {
+				columnTop = Integer.numberOfTrailingZeros(column);
+				top = Math.min(top, columnTop);
+
+				// count the holes, and the added tiles above the first hole
+				int columnHoles = Level.LEVEL_HEIGHT - columnTop - Integer.bitCount(column);
+				if (columnHoles > 0) {
+					holeCount += columnHoles;
+
+					int hole = columnTop + Integer.numberOfTrailingZeros(~(column >>> columnTop));
+					for (int y=columnTop; y<hole; y++) {
+						if (data[y][x] == 9) {
+							blockCount++;
+						}
+					}
+				}
+			}
+			tops[x*capacity + index] = columnTop;
+		}
+
+		highest[index] = top;
+		holes[index] = holeCount;
+		blocks[index] = blockCount;
+		return index;
+	}
+
+	/**
+	 * Evaluates every level of the batch.
+	 *
+	 * @param weights - the weight vector, indexed by the BoardEvaluator
+	 *                  constants
+	 * @param evaluations - the array the evaluations are written to, by the
+	 *                      index of the level
+	 */
+	public void evaluate(double[] weights, double[] evaluations) {
+		evaluate(weights, evaluations, 0, count);
+	}
+
+	/**
+	 * Evaluates a range of the levels one at a time.  Used for the levels
+	 * left over by a vector implementation.
+	 *
+	 * @param weights - the weight vector
+	 * @param evaluations - the array the evaluations are written to
+	 * @param from - the index of the first level
+	 * @param to - the index after the last level
+	 */
+	protected void evaluate(double[] weights, double[] evaluations, int from, int to) {
+		int last = Level.LEVEL_WIDTH - 1;
+
+		for (int i=from; i<to; i++) {
+			double balance = 0;
+			double previous = tops[i];
+
+			// compare the height of each column to the column on its left
+			for (int x=1; x<Level.LEVEL_WIDTH; x++) {
+				double top = tops[x*capacity + i];
+				double diff = weights[BoardEvaluator.BALANCE]*Math.abs(previous - top);
+				diff = diff*diff;
+
+				if (x == 1) {
+					diff *= previous > top ? weights[BoardEvaluator.EDGE_LOW] : weights[BoardEvaluator.EDGE_HIGH];
+				}
+				else if (x == last) {
+					diff *= previous < top ? weights[BoardEvaluator.EDGE_LOW] : weights[BoardEvaluator.EDGE_HIGH];
+				}
+				balance += diff;
+				previous = top;
+			}
+
+			double evaluation = lines[i]*weights[BoardEvaluator.LINE];
+			if (highest[i] < Level.LEVEL_HEIGHT) {
+				evaluation += highest[i]/weights[BoardEvaluator.HEIGHT_SCALE]*weights[BoardEvaluator.HEIGHT];
+			}
+
+			evaluations[i] = evaluation - balance - holes[i]*weights[BoardEvaluator.HOLE] - blocks[i]*weights[BoardEvaluator.BLOCK];
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package sim.tetris;
 
+import java.nio.ByteBuffer;
+
 /**
  * A block represents one of the seven different types of blocks from tetris.
  * There are two types of groups of blocks.  Some blocks can only be rotated
@@ -8,75 +10,128 @@ package sim.tetris;
  * space, and a 1 represents a tile.  Blocks can be moved and rotated, but the
  * collision between a level and a block should be checked before changing the
  * block.
+ * 
+ * <p>Every rotation state of every block is computed once and shared by all
+ * blocks, so a block only stores its type, rotation state and position.  
+ * Rotating or moving a block is a table lookup and never allocates.
  */
 public class Block
 {	
     /** the level height */
-	public final int LEVEL_HEIGHT = 20;
+	public static final int LEVEL_HEIGHT = 20;
 
 	/** the level width */
-	public final int LEVEL_WIDTH = 10;
+	public static final int LEVEL_WIDTH = 10;
 
     /** the left bounds of the level, inclusive */
-	public final int LEFT_BOUNDS = 0;
+	public static final int LEFT_BOUNDS = 0;
 
 	/** the right bounds of the level, inclusive */
-	public final int RIGHT_BOUNDS = LEVEL_WIDTH-1;
+	public static final int RIGHT_BOUNDS = LEVEL_WIDTH-1;
 
 	/** the y starting position of a block */
-	public final int START_Y = -2;		
+	public static final int START_Y = -2;		
 	
     /** constant of the line shape */
-	public final int SHAPE_LINE = 0;
-    public final int[][] LINE = {{0,0,0,0},
+	public static final int SHAPE_LINE = 0;
+    public static final int[][] LINE = {{0,0,0,0},
     	                                {0,0,0,0},
                                         {1,1,1,1},
                                         {0,0,0,0}};
 
 	/** constant of the S shape */
-	public final int SHAPE_S = 1;
-	public final int[][] S = {{0,1,1}, 
+	public static final int SHAPE_S = 1;
+	public static final int[][] S = {{0,1,1}, 
 									 {1,1,0},
 									 {0,0,0}};
 
 	/** constant of the Z shape */
-	public final int SHAPE_Z = 2;
-	public final int[][] Z = {{1,1,0}, 
+	public static final int SHAPE_Z = 2;
+	public static final int[][] Z = {{1,1,0}, 
 									 {0,1,1},
 									 {0,0,0}};
 									 
     /** constant of the square shape */
-	public final int SHAPE_SQUARE = 3;
-	public final int[][] SQUARE = {{1,1}, 
+	public static final int SHAPE_SQUARE = 3;
+	public static final int[][] SQUARE = {{1,1}, 
 										  {1,1}};
 
 	/** constant of the L shape */
-	public final int SHAPE_L = 4;
-	public final int[][] L = {{0,0,1}, 
+	public static final int SHAPE_L = 4;
+	public static final int[][] L = {{0,0,1}, 
 									 {1,1,1},
 									 {0,0,0}};
 
 	/** constant of the J shape */
-	public final int SHAPE_J = 5;
-	public final int[][] J = {{1,0,0}, 
+	public static final int SHAPE_J = 5;
+	public static final int[][] J = {{1,0,0}, 
 									 {1,1,1},
 									 {0,0,0}};
 
 
 	/** constant of the T shape */
-	public final int SHAPE_T = 6;
-	public final int[][] T = {{0,1,0}, 
+	public static final int SHAPE_T = 6;
+	public static final int[][] T = {{0,1,0}, 
 								     {1,1,1},
 									 {0,0,0}};
 
     /** the different shapes */									 
-	public Object[] SHAPES = {LINE, S, Z, SQUARE, L, J, T};
+	public static final int[][][] SHAPES = {LINE, S, Z, SQUARE, L, J, T};
 	
 	/** the x starting position of the blocks */
-	private final int[] START_OFFSET = {3, 4, 3, 4, 3, 4, 3 };
+	private static final int[] START_OFFSET = {3, 4, 3, 4, 3, 4, 3 };
 	
 	/** the number of different blocks */
-	public final int NUM_BLOCKS = SHAPES.length;
+	public static final int NUM_BLOCKS = SHAPES.length;
+	
+	/** the maximum number of rotation states of a block */
+	public static final int MAX_ROTATIONS = 4;
+	
+	/** 
+	 * The number of rotation states of each block.  The line, S and Z blocks
+	 * alternate between two states, the rest have four.
+	 */
+	private static final int[] ROTATIONS = {2, 2, 2, 4, 4, 4, 4};
+	
+	/** the tiles of each block type and rotation state, indexed [type][rotation] */
+	private static final int[][][][] STATES = new int[NUM_BLOCKS][][][];
+	
+	/** the row masks of each block type and rotation state */
+	private static final int[][][] MASKS = new int[NUM_BLOCKS][][];
+	
+	/** the leftmost column with a tile, for each type and rotation state */
+	private static final int[][] LEFT = new int[NUM_BLOCKS][];
+
+	/** the rightmost column with a tile, for each type and rotation state */
+	private static final int[][] RIGHT = new int[NUM_BLOCKS][];
+
+	/** the lowest row with a tile, for each type and rotation state */
+	private static final int[][] BOTTOM = new int[NUM_BLOCKS][];
+	
+	// build the rotation tables by rotating each shape clockwise
+	static 
+	{
+		for (int type=0; type<NUM_BLOCKS; type++)
+		{
+			int states = ROTATIONS[type];
+			STATES[type] = new int[states][][];
+			MASKS[type] = new int[states][];
+			LEFT[type] = new int[states];
+			RIGHT[type] = new int[states];
+			BOTTOM[type] = new int[states];
+			
+			int[][] shape = SHAPES[type];
+			for (int r=0; r<states; r++)
+			{
+				STATES[type][r] = shape;
+				MASKS[type][r] = rowMasks(shape);
+				LEFT[type][r] = leftBounds(shape);
+				RIGHT[type][r] = rightBounds(shape);
+				BOTTOM[type][r] = bottomBounds(shape);
+				shape = rotate(shape);
+			}
+		}
+	}
 	
 	/** the x location of the block */
 	private int x;
@@ -87,23 +142,12 @@ public class Block
 	/** the type of block */
 	private int type;
 
-	/** the size of this block, a block must have the same width and hieght */
-	private int blockSize;	
-	
-	/** keeps track if the peice has been rotated, only important for the
-	 *  first three types of pieces, because they alternate between 2 states,
-	 *  the rest of the pieces have four different rotation possibiliies.
+	/** 
+	 * The rotation state of the block.  The first three types of pieces 
+	 * alternate between 2 states, the rest of the pieces have four different
+	 * rotation possibiliies.
 	 */
-	private boolean rotated;
-
-    /** 
-     * The tiles that make up this block.
-     * 
-     *  <p>The block is made up of tiles that are specified by the 2D array.
-     *  If the value of an element in the array is 1, then that tile exist,
-     *  and is part of this block. 
-     */
-	private int[][] block;
+	private int rotation;
 	
 	/**
 	 * Creates a new block at the top of the level.
@@ -112,28 +156,50 @@ public class Block
 	 *                    shape constants
 	 */
 	public Block(int blockType)
+	{
+		reset(blockType);
+	}	
+	
+	/**
+	 * Turns this block into a new block at the top of the level.
+	 * 
+	 * @param blockType - the type of block, specified by one of the shape
+	 *                    constants
+	 */
+	public void reset(int blockType)
 	{
 		// get the initial position of the block
 		x = START_OFFSET[blockType];
 		y = START_Y;	 
-        rotated = false;
+        rotation = 0;
 
         // set the block type
 		type = blockType;
-        block = (int[][])SHAPES[type];
-        blockSize = block[0].length;
-	}	
+	}
 	
 	/**
 	 * Gets the tile data from this block.  If the value is 0, then the tile
-	 * is empty.  If the value is 1, then that tile exists.
+	 * is empty.  If the value is 1, then that tile exists.  The data is shared
+	 * between blocks and must not be modified.
 	 * 
 	 * @return - the data describing the location of the tiles that form this
 	 *           block
 	 */
 	public int[][] getBlockData()
 	{
-		return block;
+		return STATES[type][rotation];
+	}
+	
+	/**
+	 * Gets the tiles of each row of this block as a bitmask, where bit j of 
+	 * row i is set if the tile at column j exists.  The masks are shared 
+	 * between blocks and must not be modified.
+	 * 
+	 * @return - the row masks of this block
+	 */
+	public int[] getRowMasks()
+	{
+		return MASKS[type][rotation];
 	}
 	
 	/**
@@ -186,6 +252,47 @@ public class Block
 		return type;
 	}
 	
+	/**
+	 * Gets the rotation state of the block.
+	 * 
+	 * @return - the rotation state, between 0 and getNumRotations() - 1
+	 */
+	public int getRotation()
+	{
+		return rotation;
+	}
+	
+	/**
+	 * Sets the rotation state of the block, without fixing wall collisions.
+	 * 
+	 * @param r - the rotation state, between 0 and getNumRotations() - 1
+	 */
+	public void setRotation(int r)
+	{
+		rotation = r;
+	}
+	
+	/**
+	 * Gets the number of rotation states of this block.
+	 * 
+	 * @return - 2 for the line, S and Z blocks, otherwise 4
+	 */
+	public int getNumRotations()
+	{
+		return ROTATIONS[type];
+	}
+	
+	/**
+	 * Gets the number of rotation states of a block type.
+	 * 
+	 * @param blockType - the type of block
+	 * @return - 2 for the line, S and Z blocks, otherwise 4
+	 */
+	public static int getNumRotations(int blockType)
+	{
+		return ROTATIONS[blockType];
+	}
+	
 	/**
 	 * Gets the size of this block.
 	 * 
@@ -193,7 +300,7 @@ public class Block
 	 */
 	public int getBlockSize()
 	{
-		return blockSize;
+		return SHAPES[type].length;
 	}
 	
 	/**
@@ -229,30 +336,7 @@ public class Block
 	 */
 	public void rotateCW() 
 	{
-		// check if this is a two state rotation
-		if (rotated == true && type < SHAPE_SQUARE) 
-		{
-		   rotateCCW();
-		   return;
-		}
-		
-		// stores the rotated block
-		int[][] rotatedBlock = new int[blockSize][blockSize];
-		
-		// translate each part of the block to its new location
-		for (int i=0; i<blockSize; i++)
-		{
-			int tx = (blockSize - 1) - i;			
-			for (int j=0; j<blockSize; j++)
-			{
-				int ty = j;
-				rotatedBlock[ty][tx] = block[i][j];
-			}
-		}			
-		
-		// store the result
-		rotated = true;
-		block = rotatedBlock;
+		rotation = (rotation + 1) % ROTATIONS[type];
 	}
 	
 	/**
@@ -260,29 +344,8 @@ public class Block
 	 */
 	public void rotateCCW() 
 	{
-		// check if this is a two state rotation
-		if (rotated == false && type < SHAPE_SQUARE)
-		{
-		   rotateCW();
-		   return;
-		}
-			   
-		// stores the rotated block
-		int[][] rotatedBlock = new int[blockSize][blockSize];
-
-		for (int i=0; i<blockSize; i++)
-		{
-			int tx = i;			
-			for (int j=0; j<blockSize; j++)
-			{
-				int ty = (blockSize - 1) - j;
-				rotatedBlock[ty][tx] = block[i][j];
-			}
-		}			
-			
-		// store the result
-		rotated = false;
-		block = rotatedBlock;	
+		int states = ROTATIONS[type];
+		rotation = (rotation + states - 1) % states;
 	}
 
     /**
@@ -299,15 +362,11 @@ public class Block
 		// move the block to the right if necessary, rotation could cause a
 		// maximum offset of two spaces
 		if ((x + left) < LEFT_BOUNDS)
-		  	x++;
-		if ((x + left) < LEFT_BOUNDS)
-			x++;
+		  	x += Math.min(2, LEFT_BOUNDS - (x + left));
 
         // move the block to the left if necessary	
 		if ((x + right) > RIGHT_BOUNDS) 
-		 	x--;				   
-		if ((x + right) > RIGHT_BOUNDS) 
-			x--;				   
+		 	x -= Math.min(2, (x + right) - RIGHT_BOUNDS);				   
 	}
 
     /**
@@ -315,13 +374,129 @@ public class Block
      * 
      * @return - the leftmost point of the block
      */	
-	private int leftBounds() 
+	public int leftBounds() 
+	{
+		return LEFT[type][rotation];
+	}
+	
+	/**
+	 * Finds the right bounds of the block.
+	 * 
+	 * @return - the righttmost point of the block
+	 */	
+	public int rightBounds()
+	{
+		return RIGHT[type][rotation];
+	}
+	
+	/**
+	 * Finds the bottom bounds of the block.
+	 * 
+	 * @return - the lowest row of the block containing a tile
+	 */	
+	public int bottomBounds()
+	{
+		return BOTTOM[type][rotation];
+	}
+	
+	/**
+	 * Writes the type, rotation and position to a buffer.
+	 * 
+	 * @param buffer - the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put((byte)type);
+		buffer.put((byte)rotation);
+		buffer.put((byte)x);
+		buffer.put((byte)y);
+	}
+	
+	/**
+	 * Sets the type, rotation and position to values read from a buffer, as
+	 * written by writeTo.
+	 * 
+	 * @param buffer - the buffer to read from
+	 */
+	public void readFrom(ByteBuffer buffer) {
+		reset(buffer.get());
+		rotation = buffer.get();
+		x = buffer.get();
+		y = buffer.get();
+	}
+	
+	/**
+	 * Copies this block.
+	 * 
+	 * @return - a block with the same type, rotation and position
+	 */
+	public Block copy() {
+		Block b = new Block(type);
+		b.x = x;
+		b.y = y;
+		b.rotation = rotation;
+		return b;
+	}
+	
+	/**
+	 * Rotates a shape 90 degrees clockwise.
+	 * 
+	 * @param shape - the tiles of the shape
+	 * @return - the rotated tiles
+	 */
+	private static int[][] rotate(int[][] shape)
 	{
-		for (int i=0; i<blockSize; i++) 
+		int size = shape.length;
+		int[][] rotated = new int[size][size];
+		
+		// translate each part of the block to its new location
+		for (int i=0; i<size; i++)
 		{
-			for (int j=0; j<blockSize; j++) 
+			int tx = (size - 1) - i;			
+			for (int j=0; j<size; j++)
 			{
-				if (block[j][i] == 1) {
+				int ty = j;
+				rotated[ty][tx] = shape[i][j];
+			}
+		}			
+		
+		return rotated;
+	}
+	
+	/**
+	 * Computes the row masks of a shape.
+	 * 
+	 * @param shape - the tiles of the shape
+	 * @return - a bitmask per row, bit j is set if the tile at column j exists
+	 */
+	private static int[] rowMasks(int[][] shape)
+	{
+		int[] masks = new int[shape.length];
+		
+		for (int i=0; i<shape.length; i++)
+		{
+			for (int j=0; j<shape.length; j++)
+			{
+				if (shape[i][j] == 1)
+					masks[i] |= 1 << j;
+			}
+		}
+		
+		return masks;
+	}
+
+	/**
+	 * Finds the leftmost column of a shape containing a tile.
+	 * 
+	 * @param shape - the tiles of the shape
+	 * @return - the leftmost point of the shape
+	 */
+	private static int leftBounds(int[][] shape) 
+	{
+		for (int i=0; i<shape.length; i++) 
+		{
+			for (int j=0; j<shape.length; j++) 
+			{
+				if (shape[j][i] == 1) {
 					return i;
 				}
 			}			
@@ -332,17 +507,18 @@ public class Block
 	}
 	
 	/**
-	 * Finds the right bounds of the block.
+	 * Finds the rightmost column of a shape containing a tile.
 	 * 
-	 * @return - the righttmost point of the block
-	 */	
-	private int rightBounds()
+	 * @param shape - the tiles of the shape
+	 * @return - the rightmost point of the shape
+	 */
+	private static int rightBounds(int[][] shape)
 	{
- 		for (int i=blockSize-1; i>=0; i--) 
+ 		for (int i=shape.length-1; i>=0; i--) 
 		{
-			for (int j=0; j<blockSize; j++) 
+			for (int j=0; j<shape.length; j++) 
 			{
-				if (block[j][i] == 1) {
+				if (shape[j][i] == 1) {
 					return i;
 				}
 			}			
@@ -352,16 +528,25 @@ public class Block
 		return 0;
 	}
 	
-	public Block copy() {
-		Block b = new Block(type);
-		b.x = x;
-		b.y = y;
-		b.rotated = rotated;
-		for (int y=0; y<block.length; y++) {
-			for (int x=0; x<block[y].length; x++) {				
-				b.block[y][x] = block[y][x];
+	/**
+	 * Finds the lowest row of a shape containing a tile.
+	 * 
+	 * @param shape - the tiles of the shape
+	 * @return - the lowest point of the shape
+	 */
+	private static int bottomBounds(int[][] shape)
+	{
+		for (int i=shape.length-1; i>=0; i--) 
+		{
+			for (int j=0; j<shape.length; j++) 
+			{
+				if (shape[i][j] == 1) {
+					return i;
+				}
 			}			
 		}
-		return b;
+		
+		// no point was found		
+		return 0;
 	}
 }
@@ -0,0 +1,56 @@
+package sim.tetris;
+
+/**
+ * Scores a level that a block has just been added to.  The tiles of the
+ * added block are marked with 9, and the completed lines have not been
+ * cleared yet.  Higher evaluations are better.
+ * 
+ * <p>The heuristic is a weighted sum of board features.  The weights are
+ * passed as a vector indexed by the constants of this interface, so new 
+ * features can be added without changing the signature.
+ */
+public interface BoardEvaluator {
+
+	/** weight of the height of the highest tile, as a fraction of the level */
+	public static final int HEIGHT = 0;
+
+	/** weight of the height difference between neighboring columns */
+	public static final int BALANCE = 1;
+
+	/** weight of each empty tile below the top of its column */
+	public static final int HOLE = 2;
+
+	/** weight of each tile of the added block covering a hole */
+	public static final int BLOCK = 3;
+
+	/** weight of each completed line */
+	public static final int LINE = 4;
+
+	/** 
+	 * multiplier of the balance penalty when an edge column is lower than 
+	 * its neighbor
+	 */
+	public static final int EDGE_LOW = 5;
+
+	/** 
+	 * multiplier of the balance penalty when an edge column is as high or
+	 * higher than its neighbor
+	 */
+	public static final int EDGE_HIGH = 6;
+	
+	/** the number of rows that the height of the highest tile is divided by */
+	public static final int HEIGHT_SCALE = 7;
+
+	/** the number of weights */
+	public static final int NUM_WEIGHTS = 8;
+
+	/**
+	 * Evaluates the level.  The completed lines are cleared from the level as
+	 * part of the evaluation.
+	 * 
+	 * @param level - the level to evaluate
+	 * @param weights - the weight vector
+	 * @return - the evaluation
+	 */
+	public double evaluate(Level level, double[] weights);
+}
@@ -0,0 +1,74 @@
+package sim.tetris;
+
+/**
+ * The default board evaluator.  Every feature is computed in a single pass
+ * over the columns of the level, using the column summaries kept by the 
+ * level rather than scanning the tiles.
+ */
+public class ColumnBoardEvaluator implements BoardEvaluator {
+
+	/**
+	 * Evaluates the level.  The completed lines are cleared from the level as
+	 * part of the evaluation.
+	 * 
+	 * @param level - the level to evaluate
+	 * @param weights - the weight vector
+	 * @return - the evaluation
+	 */
+	public double evaluate(Level level, double[] weights) {
+		int lines = level.clearFullLines();
+		int[][] data = level.getLevelData();
+		int last = Level.LEVEL_WIDTH - 1;
+		
+		int highest = Level.LEVEL_HEIGHT;
+		int holes = 0;
+		int blocks = 0;
+		double balance = 0;
+		int previous = 0;
+		
+		for (int x=0; x<Level.LEVEL_WIDTH; x++) {
+			int column = level.getColumnMask(x);
+			int top = Level.LEVEL_HEIGHT;
+			
+			if (column != 0) {
+				top = Integer.numberOfTrailingZeros(column);
+				highest = Math.min(highest, top);
+				
+				// count the holes, and the added tiles above the first hole
+				int columnHoles = Level.LEVEL_HEIGHT - top - Integer.bitCount(column);
+				if (columnHoles > 0) {
+					holes += columnHoles;
+					
+					int hole = top + Integer.numberOfTrailingZeros(~(column >>> top));
+					for (int y=top; y<hole; y++) {
+						if (data[y][x] == 9) {
+							blocks++;
+						}
+					}
+				}
+			}
+			
+			// compare the height to the column on the left
+			if (x > 0) {
+				double diff = weights[BALANCE]*Math.abs(previous - top);
+				diff = diff*diff;
+				
+				if (x == 1) {
+					diff *= previous > top ? weights[EDGE_LOW] : weights[EDGE_HIGH];
+				}
+				else if (x == last) {
+					diff *= previous < top ? weights[EDGE_LOW] : weights[EDGE_HIGH];
+				}
+				balance += diff;
+			}
+			previous = top;
+		}
+		
+		double evaluation = lines*weights[LINE];
+		if (highest < Level.LEVEL_HEIGHT) {
+			evaluation += highest/weights[HEIGHT_SCALE]*weights[HEIGHT];
+		}
+		
+		return evaluation - balance - holes*weights[HOLE] - blocks*weights[BLOCK];
+	}
+}
@@ -0,0 +1,153 @@
+package sim.tetris;
+
+/**
+ * A bounded cache of board evaluations, keyed by the Zobrist hash of the
+ * level.  Entries are stored in primitive arrays with open addressing.  A
+ * key is looked for in a short window of slots, and when the window is full
+ * the entry that was used least recently is replaced.
+ * 
+ * <p>The cache does not know the evaluator or the weights, so it must be
+ * cleared when either of them changes.
+ */
+public class EvaluationCache {
+
+	/** the number of slots searched for a key */
+	private static final int WINDOW = 8;
+	
+	/** the hashes of the cached levels */
+	private final long[] keys;
+	
+	/** the cached evaluations */
+	private final double[] values;
+	
+	/** the time each slot was last used, 0 if the slot is empty */
+	private final long[] used;
+	
+	/** mask of the slot index bits */
+	private final int mask;
+	
+	/** the current time, incremented on every lookup */
+	private long clock = 0;
+	
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	
+	/**
+	 * Creates an empty cache.
+	 * 
+	 * @param capacity - the number of entries, rounded up to a power of two
+	 */
+	public EvaluationCache(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, WINDOW) - 1) << 1;
+		keys = new long[size];
+		values = new double[size];
+		used = new long[size];
+		mask = size - 1;
+	}
+	
+	/**
+	 * Finds the slot holding a key.
+	 * 
+	 * @param key - the hash of the level
+	 * @return - the slot, or -1 if the key is not cached
+	 */
+	public int find(long key) {
+		clock++;
+		int start = index(key);
+		
+		for (int i=0; i<WINDOW; i++) {
+			int slot = (start + i) & mask;
+			if (used[slot] != 0 && keys[slot] == key) {
+				used[slot] = clock;
+				hits++;
+				return slot;
+			}
+		}
+		
+		misses++;
+		return -1;
+	}
+	
+	/**
+	 * Gets the evaluation cached in a slot.
+	 * 
+	 * @param slot - a slot returned by find
+	 * @return - the evaluation
+	 */
+	public double get(int slot) {
+		return values[slot];
+	}
+	
+	/**
+	 * Caches an evaluation, replacing the least recently used entry of the
+	 * key's window if it is full.
+	 * 
+	 * @param key - the hash of the level
+	 * @param value - the evaluation
+	 */
+	public void put(long key, double value) {
+		int start = index(key);
+		int oldest = start;
+		
+		for (int i=0; i<WINDOW; i++) {
+			int slot = (start + i) & mask;
+			if (used[slot] == 0) {
+				oldest = slot;
+				break;
+			}
+			if (used[slot] < used[oldest]) {
+				oldest = slot;
+			}
+		}
+		
+		if (used[oldest] != 0) {
+			evictions++;
+		}
+		keys[oldest] = key;
+		values[oldest] = value;
+		used[oldest] = ++clock;
+	}
+	
+	/**
+	 * Removes every entry.  The statistics are kept.
+	 */
+	public void clear() {
+		for (int i=0; i<used.length; i++) {
+			used[i] = 0;
+		}
+	}
+	
+	/**
+	 * Gets the first slot of the window of a key.
+	 */
+	private int index(long key) {
+		return (int)(key ^ (key >>> 32)) & mask;
+	}
+	
+	public int getCapacity() {
+		return keys.length;
+	}
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	public long getMisses() {
+		return misses;
+	}
+	
+	public long getEvictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Gets the fraction of lookups that found a cached evaluation.
+	 * 
+	 * @return - the hit rate, between 0 and 1
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : hits/(double)lookups;
+	}
+}
@@ -1,5 +1,9 @@
 package sim.tetris;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
 /**
  * A game object sets up a timer to refresh the game status 40 times a second.
  * When the game is updated, the key presses are updated and the current scene
@@ -33,6 +37,36 @@ public class Game
 		
 	TetrisAgent agent;
 	
+	/** the random seed of the blocks */
+	private int seed;
+	
+	/** 
+	 * tells if the game is played block by block instead of frame by frame, 
+	 * which skips the drop timer and the line clearing animation
+	 */
+	private boolean headless = false;
+	
+	/** the limits on how long the game is played */
+	private GameBudget budget = GameBudget.NONE;
+	
+	/** the placements of the game, or null if they are not recorded */
+	private GameReplay replay = null;
+	
+	/** how the game ended */
+	private GameResult.Status status = GameResult.Status.RUNNING;
+	
+	/** the number of updates between checks of the CPU time */
+	private static final int CPU_CHECK_INTERVAL = 64;
+	
+	/** 
+	 * the version of the snapshot format written by writeTo, version 2 adds
+	 * the direct placement of the agent
+	 */
+	public static final int SNAPSHOT_VERSION = 2;
+	
+	/** the largest snapshot written by writeTo */
+	public static final int MAX_SNAPSHOT_SIZE = 384;
+	
 	/**
 	 * Creates the splash screen, and begins running the game.
 	 * 
@@ -40,10 +74,23 @@ public class Game
 	 */
 	public Game(int seed)
 	{
+		this(seed, null);
+	}
+	
+	/**
+	 * Creates a game played by an agent with the specified factors.
+	 * 
+	 * @param seed - the random seed of the blocks
+	 * @param config - the factors of the agent, or null for random factors
+	 */
+	public Game(int seed, AgentConfig config)
+	{
+		this.seed = seed;
+		
 		// set up the input map
 		input = new InputMap();		 
 		
-		agent = new TabuTetrisAgent(input); 
+		agent = config != null ? new TabuTetrisAgent(input, config) : new TabuTetrisAgent(input); 
 		
 		// set up a new player
 		player = new Player();
@@ -58,9 +105,117 @@ public class Game
 //		thread.start();
 	}
 	
+	/**
+	 * Restarts the game with a new seed and agent factors, reusing the level,
+	 * the agent and its scratch buffers.  The game is the same as a new game
+	 * with the same seed and factors.
+	 * 
+	 * @param seed - the random seed of the blocks
+	 * @param config - the factors of the agent
+	 */
+	public void reset(int seed, AgentConfig config)
+	{
+		this.seed = seed;
+		input.clear();
+		config.applyTo((TabuTetrisAgent)agent);
+		player.reset();
+		scene.reset(seed);
+		status = GameResult.Status.RUNNING;
+		if (replay != null) {
+			replay.start(seed, config, getLookahead());
+		}
+	}
+	
 	public InputMap getInputMap() {
 		return input;
 	}
+	
+	/**
+	 * Sets whether the simulation advances block by block rather than every
+	 * frame.  Both modes produce the same game for the same seed.
+	 * 
+	 * @param headless - true to skip the frame clock
+	 */
+	public void setHeadless(boolean headless) {
+		this.headless = headless;
+	}
+	
+	public boolean isHeadless() {
+		return headless;
+	}
+	
+	/**
+	 * Sets the limits on how long the game is played.  A game that reaches a
+	 * limit stops, and its result is censored.
+	 * 
+	 * @param budget - the limits, or GameBudget.NONE
+	 */
+	public void setBudget(GameBudget budget) {
+		this.budget = budget;
+	}
+	
+	public GameBudget getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Sets whether the placement of every block is recorded in a replay.  
+	 * This must be set before the game is played.
+	 * 
+	 * @param record - true to record a replay
+	 */
+	public void setRecording(boolean record) {
+		if (!record) {
+			replay = null;
+		}
+		else if (replay == null) {
+			replay = new GameReplay();
+			replay.start(seed, AgentConfig.of((TabuTetrisAgent)agent), getLookahead());
+		}
+		scene.replay = replay;
+	}
+	
+	/**
+	 * Gets the replay of the game so far, with the current lines, score and
+	 * status as the recorded result.
+	 * 
+	 * @return - the replay, or null if the game is not recorded
+	 */
+	public GameReplay getReplay() {
+		if (replay != null) {
+			replay.finish(getResult(), getLookahead());
+		}
+		return replay;
+	}
+	
+	/**
+	 * Gets how the game ended, or RUNNING if it has not ended.
+	 */
+	public GameResult.Status getStatus() {
+		return status;
+	}
+	
+	public int getLines() {
+		return player.getLines();
+	}
+	
+	public int getScore() {
+		return player.getScore();
+	}
+	
+	public int getPieces() {
+		return scene.getPieces();
+	}
+	
+	/**
+	 * Gets the result of the game so far.
+	 * 
+	 * @return - the seed, agent factors, lines, score, number of pieces and
+	 *           how the game ended
+	 */
+	public GameResult getResult() {
+		return new GameResult(seed, AgentConfig.of((TabuTetrisAgent)agent), getLines(), getScore(), getPieces(), status);
+	}
 
 	public double getHeightFactor() {
 		return ((TabuTetrisAgent)agent).HEIGHT_FACTOR;
@@ -81,23 +236,217 @@ public class Game
 		return ((TabuTetrisAgent)agent).LINE_FACTOR;
 	}
 	
+	/**
+	 * Sets how many of the agent's best moves are searched again with the
+	 * next block.
+	 * 
+	 * @param topK - the number of moves to search, 0 for a greedy agent
+	 */
+	public void setLookahead(int topK) {
+		((TabuTetrisAgent)agent).setLookahead(topK);
+	}
+	
+	public int getLookahead() {
+		return ((TabuTetrisAgent)agent).getLookahead();
+	}
+	
+	/**
+	 * Sets whether the agent passes its moves to the scene as placements,
+	 * instead of queuing key presses.  The game is the same either way.
+	 * 
+	 * @param direct - true to place blocks directly
+	 */
+	public void setDirectPlacement(boolean direct) {
+		((TabuTetrisAgent)agent).setDirectPlacement(direct);
+	}
+	
+	public boolean isDirectPlacement() {
+		return ((TabuTetrisAgent)agent).isDirectPlacement();
+	}
+	
+	/**
+	 * Gets the number of placements of the agent since the last reset that
+	 * the block could not reach, because the level was in the way.
+	 */
+	public int getDivergences() {
+		return scene.getDivergences();
+	}
+	
+	/**
+	 * Gets the counters of the agent's search.  They are not cleared by 
+	 * reset, and are not part of a snapshot.
+	 */
+	public SearchStats getSearchStats() {
+		return ((TabuTetrisAgent)agent).getSearchStats();
+	}
+	
 	/**
 	 * Calls update after a certain amount of time has elapsed, and loops until
-	 * the program exits.
+	 * the game ends or reaches a limit of the budget.
+	 * 
+	 * @return - the number of lines cleared
 	 */
 	public int runSimulation()
 	{
-		// loop forever
+		int maxPieces = budget.maxPieces > 0 ? budget.maxPieces : Integer.MAX_VALUE;
+		int maxLines = budget.maxLines > 0 ? budget.maxLines : Integer.MAX_VALUE;
+		ThreadMXBean threads = budget.maxCpuMillis > 0 ? ManagementFactory.getThreadMXBean() : null;
+		long deadline = threads != null ? cpuTime(threads) + budget.maxCpuMillis*1000000L : 0;
+		int updates = 0;
+		
+		// loop until the game ends
 		while (true)
 		{	
-			scene.update(input);
+			if (headless) 
+				scene.updateBlock(input);
+			else
+				scene.update(input);
 			
 			if (scene.isDead()) {
+				status = GameResult.Status.DEAD;
+				return player.getLines();
+			}
+			
+			if (scene.getPieces() >= maxPieces) {
+				status = GameResult.Status.MAX_PIECES;
+				return player.getLines();
+			}
+			
+			if (player.getLines() >= maxLines) {
+				status = GameResult.Status.MAX_LINES;
+				return player.getLines();
+			}
+			
+			if (threads != null && ++updates % CPU_CHECK_INTERVAL == 0 && cpuTime(threads) >= deadline) {
+				status = GameResult.Status.MAX_CPU_TIME;
 				return player.getLines();
 			}
 		}
 	}		
 	
+	/**
+	 * Plays until the next block is added to the level, or the game ends.  
+	 * The budget is not checked, so that callers can play a range of blocks.
+	 * 
+	 * @return - false if the game has ended
+	 */
+	public boolean playBlock()
+	{
+		int pieces = scene.getPieces();
+		while (scene.getPieces() == pieces && !scene.isDead())
+		{
+			if (headless) 
+				scene.updateBlock(input);
+			else
+				scene.update(input);
+		}
+		
+		if (scene.isDead()) {
+			status = GameResult.Status.DEAD;
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Marks a game that was stopped by the caller, such as a game that was
+	 * played block by block up to a limit.
+	 * 
+	 * @param status - the limit that stopped the game
+	 */
+	public void setStatus(GameResult.Status status) {
+		this.status = status;
+	}
+	
+	/**
+	 * Writes a snapshot of the game to a buffer, which can be restored with 
+	 * readFrom to continue the game with the same blocks, moves and score.
+	 * The snapshot holds the seed, the agent factors and lookahead, the 
+	 * level, blocks, random state, timers, the queued input or placement and 
+	 * the player.  
+	 * The budget is not part of the snapshot.
+	 * 
+	 * @param buffer - the buffer to write to, see MAX_SNAPSHOT_SIZE
+	 */
+	public void writeTo(ByteBuffer buffer)
+	{
+		TabuTetrisAgent tabu = (TabuTetrisAgent)agent;
+		buffer.put((byte)SNAPSHOT_VERSION);
+		buffer.putInt(seed);
+		buffer.put((byte)status.ordinal());
+		buffer.put((byte)(headless ? 1 : 0));
+		for (double factor : AgentConfig.of(tabu).toArray()) {
+			buffer.putDouble(factor);
+		}
+		buffer.put((byte)tabu.getLookahead());
+		
+		scene.writeTo(buffer);
+		player.writeTo(buffer);
+		input.writeTo(buffer);
+		buffer.put((byte)(tabu.isDirectPlacement() ? 1 : 0));
+		buffer.putInt(tabu.getPlacement());
+	}
+	
+	/**
+	 * Replaces the state of the game with a snapshot written by writeTo.  The
+	 * level, blocks and agent of this game are reused.
+	 * 
+	 * @param buffer - the buffer to read from
+	 */
+	public void readFrom(ByteBuffer buffer)
+	{
+		int version = buffer.get();
+		if (version != 1 && version != SNAPSHOT_VERSION) {
+			throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+		}
+		
+		seed = buffer.getInt();
+		int ordinal = buffer.get();
+		if (ordinal < 0 || ordinal >= GameResult.Status.values().length) {
+			throw new IllegalArgumentException("Unknown game status in snapshot: " + ordinal);
+		}
+		status = GameResult.Status.values()[ordinal];
+		headless = buffer.get() != 0;
+		double[] factors = new double[5];
+		for (int i=0; i<factors.length; i++) {
+			factors[i] = buffer.getDouble();
+		}
+		new AgentConfig(factors).applyTo((TabuTetrisAgent)agent);
+		setLookahead(buffer.get());
+		
+		scene.readFrom(buffer);
+		player.readFrom(buffer);
+		input.readFrom(buffer);
+		
+		TabuTetrisAgent tabu = (TabuTetrisAgent)agent;
+		tabu.setDirectPlacement(version >= 2 && buffer.get() != 0);
+		tabu.setPlacement(version >= 2 ? buffer.getInt() : TetrisAgent.NO_PLACEMENT);
+	}
+	
+	/**
+	 * Creates a game from a snapshot written by writeTo.
+	 * 
+	 * @param buffer - the buffer to read from
+	 * @return - the restored game
+	 */
+	public static Game restore(ByteBuffer buffer)
+	{
+		Game game = new Game(0, new AgentConfig(1, 1, 1, 1, 1));
+		game.readFrom(buffer);
+		return game;
+	}
+	
+	/**
+	 * Gets the CPU time of the current thread, or the wall clock time if the
+	 * JVM does not measure CPU time.
+	 * 
+	 * @return - the time in nanoseconds
+	 */
+	private static long cpuTime(ThreadMXBean threads) {
+		return threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled() 
+				? threads.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+	
 	/**
 	 * Updates the game.
 	 * 
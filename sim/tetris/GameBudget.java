@@ -0,0 +1,55 @@
+package sim.tetris;
+
+import java.io.Serializable;
+
+/**
+ * Limits on how long a game is played.  A game that reaches a limit is
+ * stopped, and its result is censored: the lines and pieces tell how far
+ * the game got, not how far the agent would have played.
+ * 
+ * <p>A limit of 0 means that there is no limit.
+ */
+public class GameBudget implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** a budget without limits */
+	public static final GameBudget NONE = new GameBudget(0, 0, 0);
+	
+	/** the most blocks added to the level */
+	public final int maxPieces;
+	
+	/** the most lines cleared */
+	public final int maxLines;
+	
+	/** the most CPU time spent by the thread playing the game */
+	public final long maxCpuMillis;
+	
+	/**
+	 * Creates a budget.
+	 * 
+	 * @param maxPieces - the most blocks added to the level, 0 for no limit
+	 * @param maxLines - the most lines cleared, 0 for no limit
+	 * @param maxCpuMillis - the most CPU time of the game, 0 for no limit
+	 */
+	public GameBudget(int maxPieces, int maxLines, long maxCpuMillis) {
+		if (maxPieces < 0 || maxLines < 0 || maxCpuMillis < 0) {
+			throw new IllegalArgumentException("Limits must not be negative");
+		}
+		
+		this.maxPieces = maxPieces;
+		this.maxLines = maxLines;
+		this.maxCpuMillis = maxCpuMillis;
+	}
+	
+	/**
+	 * Tells if the budget has any limits.
+	 */
+	public boolean isLimited() {
+		return maxPieces > 0 || maxLines > 0 || maxCpuMillis > 0;
+	}
+	
+	public String toString() {
+		return "maxPieces=" + maxPieces + ",maxLines=" + maxLines + ",maxCpuMillis=" + maxCpuMillis;
+	}
+}
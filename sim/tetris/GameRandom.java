@@ -0,0 +1,68 @@
+package sim.tetris;
+
+import java.util.Random;
+
+/**
+ * A Random that exposes its state, so that a game can be saved and resumed
+ * with the same sequence of blocks.  It implements the same linear 
+ * congruential generator as java.util.Random, and gives the same numbers 
+ * for the same seed.
+ * 
+ * <p>Gaussian values are not part of the state, and are not used by the game.
+ */
+public class GameRandom extends Random
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+	
+	/** 
+	 * the 48 bit state of the generator, set by the Random constructor 
+	 * through setSeed, so it must not have an initializer
+	 */
+	private long state;
+	
+	/**
+	 * Creates a generator.
+	 * 
+	 * @param seed - the initial seed
+	 */
+	public GameRandom(long seed)
+	{
+		super(seed);
+	}
+	
+	public synchronized void setSeed(long seed)
+	{
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+	
+	protected int next(int bits)
+	{
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(state >>> (48 - bits));
+	}
+	
+	/**
+	 * Gets the state of the generator.
+	 * 
+	 * @return - the 48 bit state
+	 */
+	public long getState()
+	{
+		return state;
+	}
+	
+	/**
+	 * Sets the state of the generator, as returned by getState.
+	 * 
+	 * @param state - the 48 bit state
+	 */
+	public void setState(long state)
+	{
+		this.state = state & MASK;
+	}
+}
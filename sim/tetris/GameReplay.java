@@ -0,0 +1,278 @@
+package sim.tetris;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A record of the placements chosen in a game, which can be played again
+ * without the agent to check the lines and score of the game.  Each block 
+ * that was added to the level is stored as one byte, with the rotation in
+ * the high bits and the column + 2 in the low four bits.
+ * 
+ * <p>The file format is a magic number and version, followed by varints for
+ * the seed, lookahead, status, pieces, lines and score, the five factors as
+ * doubles, and a byte per piece.  Replays can be written one after another
+ * to the same stream.
+ */
+public class GameReplay
+{
+	/** the first bytes of a replay, "TRPL" */
+	private static final int MAGIC = 0x5452504C;
+	
+	/** the version of the format */
+	public static final int VERSION = 1;
+	
+	/** the offset of the column of a placement, for blocks left of the level */
+	private static final int COLUMN_OFFSET = 2;
+	
+	/** a scene agent that does nothing, since the moves are in the replay */
+	private static final TetrisAgent NO_AGENT = new TetrisAgent() {
+		public void newBlock(Block block, Block next, Level level) {}
+		public void blockDropped(Block block) {}
+	};
+	
+	private int seed;
+	private AgentConfig config;
+	private int lookahead;
+	
+	/** the outcome recorded when the game was played */
+	private GameResult.Status status = GameResult.Status.RUNNING;
+	private int lines;
+	private int score;
+	
+	/** the placements, one byte per piece */
+	private byte[] placements = new byte[256];
+	private int pieces;
+	
+	/**
+	 * Creates an empty replay, for recording or reading.
+	 */
+	public GameReplay()
+	{
+	}
+	
+	/**
+	 * Starts recording a new game, clearing the placements.
+	 * 
+	 * @param seed - the random seed of the game
+	 * @param config - the factors of the agent
+	 * @param lookahead - the lookahead of the agent
+	 */
+	void start(int seed, AgentConfig config, int lookahead)
+	{
+		this.seed = seed;
+		this.config = config;
+		this.lookahead = lookahead;
+		status = GameResult.Status.RUNNING;
+		lines = 0;
+		score = 0;
+		pieces = 0;
+	}
+	
+	/**
+	 * Records a block that was added to the level.
+	 * 
+	 * @param block - the block, at the position where it was added
+	 */
+	void record(Block block)
+	{
+		if (pieces == placements.length) {
+			placements = Arrays.copyOf(placements, Math.max(256, 2*pieces));
+		}
+		placements[pieces++] = (byte)((block.getRotation() << 4) | (block.getX() + COLUMN_OFFSET));
+	}
+	
+	/**
+	 * Records the outcome of the game.
+	 * 
+	 * @param result - the result of the game
+	 * @param lookahead - the lookahead of the agent
+	 */
+	void finish(GameResult result, int lookahead)
+	{
+		this.config = result.config;
+		this.lookahead = lookahead;
+		status = result.status;
+		lines = result.lines;
+		score = result.score;
+	}
+	
+	public int getSeed() {
+		return seed;
+	}
+	
+	public AgentConfig getConfig() {
+		return config;
+	}
+	
+	public int getLookahead() {
+		return lookahead;
+	}
+	
+	public int getPieces() {
+		return pieces;
+	}
+	
+	/**
+	 * Gets the rotation of a placement.
+	 * 
+	 * @param piece - the index of the piece
+	 * @return - the rotation state of the block
+	 */
+	public int getRotation(int piece) {
+		return placements[piece] >> 4;
+	}
+	
+	/**
+	 * Gets the column of a placement.
+	 * 
+	 * @param piece - the index of the piece
+	 * @return - the x location of the block
+	 */
+	public int getColumn(int piece) {
+		return (placements[piece] & 0xF) - COLUMN_OFFSET;
+	}
+	
+	/**
+	 * Gets the result that was recorded when the game was played.
+	 */
+	public GameResult getRecordedResult() {
+		return new GameResult(seed, config, lines, score, pieces, status);
+	}
+	
+	/**
+	 * Plays the placements again without the agent.  The blocks come from 
+	 * the seed, and each block is put at its recorded rotation and column and
+	 * dropped, so this is much faster than playing the game.
+	 * 
+	 * @return - the result of the replayed game, DEAD if the blocks reached 
+	 *           the top before the last placement
+	 */
+	public GameResult replay()
+	{
+		Player player = new Player();
+		GameScene scene = new GameScene(seed, player, NO_AGENT);
+		
+		for (int i=0; i<pieces; i++) {
+			if (!scene.replayBlock(getRotation(i), getColumn(i))) {
+				return new GameResult(seed, config, player.getLines(), player.getScore(), scene.getPieces(), 
+						GameResult.Status.DEAD);
+			}
+		}
+		
+		return new GameResult(seed, config, player.getLines(), player.getScore(), scene.getPieces(), status);
+	}
+	
+	/**
+	 * Replays the game, and checks that the lines, score and pieces are the
+	 * ones that were recorded.
+	 * 
+	 * @return - true if the replay matches the recorded result
+	 */
+	public boolean verify()
+	{
+		GameResult result = replay();
+		return result.lines == lines && result.score == score && result.pieces == pieces;
+	}
+	
+	/**
+	 * Writes the replay to a stream.
+	 * 
+	 * @param out - the stream to write to
+	 */
+	public void writeTo(DataOutputStream out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		writeVarInt(out, VERSION);
+		writeVarInt(out, seed);
+		writeVarInt(out, lookahead);
+		writeVarInt(out, status.ordinal());
+		writeVarInt(out, pieces);
+		writeVarInt(out, lines);
+		writeVarInt(out, score);
+		for (double factor : config.toArray()) {
+			out.writeDouble(factor);
+		}
+		out.write(placements, 0, pieces);
+	}
+	
+	/**
+	 * Reads the next replay from a stream.
+	 * 
+	 * @param in - the stream to read from
+	 * @return - the replay, or null at the end of the stream
+	 */
+	public static GameReplay readFrom(DataInputStream in) throws IOException
+	{
+		int magic;
+		try {
+			magic = in.readInt();
+		}
+		catch (EOFException e) {
+			return null;
+		}
+		
+		if (magic != MAGIC) {
+			throw new IOException("Not a replay");
+		}
+		int version = readVarInt(in);
+		if (version != VERSION) {
+			throw new IOException("Unsupported replay version: " + version);
+		}
+		
+		GameReplay replay = new GameReplay();
+		replay.seed = readVarInt(in);
+		replay.lookahead = readVarInt(in);
+		int status = readVarInt(in);
+		if (status < 0 || status >= GameResult.Status.values().length) {
+			throw new IOException("Corrupt replay: unknown status " + status);
+		}
+		replay.status = GameResult.Status.values()[status];
+		replay.pieces = readVarInt(in);
+		if (replay.pieces < 0) {
+			throw new IOException("Corrupt replay: " + replay.pieces + " pieces");
+		}
+		replay.lines = readVarInt(in);
+		replay.score = readVarInt(in);
+		double[] factors = new double[5];
+		for (int i=0; i<factors.length; i++) {
+			factors[i] = in.readDouble();
+		}
+		replay.config = new AgentConfig(factors);
+		replay.placements = new byte[replay.pieces];
+		in.readFully(replay.placements);
+		return replay;
+	}
+	
+	/**
+	 * Writes an int as a zigzag varint, 7 bits per byte.
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		int bits = (value << 1) ^ (value >> 31);
+		while ((bits & ~0x7F) != 0) {
+			out.write((bits & 0x7F) | 0x80);
+			bits >>>= 7;
+		}
+		out.write(bits);
+	}
+	
+	/**
+	 * Reads an int written by writeVarInt.
+	 */
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int bits = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			bits |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		return (bits >>> 1) ^ -(bits & 1);
+	}
+}
@@ -0,0 +1,108 @@
+package sim.tetris;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of one simulated game.
+ */
+public class GameResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the column names of toCsv */
+	public static final String CSV_HEADER = "seed,lines,score,pieces,heightFactor,balanceFactor,holeFactor,blockFactor,lineFactor,status";
+	
+	/**
+	 * How a game ended.  Games that were stopped by a GameBudget are censored.
+	 */
+	public enum Status {
+		
+		/** the game is still being played */
+		RUNNING,
+		
+		/** the blocks reached the top of the level */
+		DEAD,
+		
+		/** the game reached the piece limit */
+		MAX_PIECES,
+		
+		/** the game reached the line limit */
+		MAX_LINES,
+		
+		/** the game reached the CPU time limit */
+		MAX_CPU_TIME
+	}
+	
+	public final int seed;
+	public final AgentConfig config;
+	public final int lines;
+	public final int score;
+	public final int pieces;
+	public final Status status;
+	
+	/**
+	 * Creates the result of a game that was played until the end.
+	 * 
+	 * @param seed - the random seed of the game
+	 * @param config - the factors of the agent
+	 * @param lines - the number of lines cleared
+	 * @param score - the final score
+	 * @param pieces - the number of blocks added to the level
+	 */
+	public GameResult(int seed, AgentConfig config, int lines, int score, int pieces) {
+		this(seed, config, lines, score, pieces, Status.DEAD);
+	}
+	
+	/**
+	 * Creates a result.
+	 * 
+	 * @param seed - the random seed of the game
+	 * @param config - the factors of the agent
+	 * @param lines - the number of lines cleared
+	 * @param score - the final score
+	 * @param pieces - the number of blocks added to the level
+	 * @param status - how the game ended
+	 */
+	public GameResult(int seed, AgentConfig config, int lines, int score, int pieces, Status status) {
+		this.seed = seed;
+		this.config = config;
+		this.lines = lines;
+		this.score = score;
+		this.pieces = pieces;
+		this.status = status;
+	}
+	
+	/**
+	 * Tells if the game was stopped before the end, so that the lines are
+	 * a lower bound of what the agent would have cleared.
+	 */
+	public boolean isCensored() {
+		return status != Status.DEAD;
+	}
+	
+	/**
+	 * Formats the result as a line of comma separated values.
+	 * 
+	 * @return - the values, in the order of CSV_HEADER
+	 */
+	public String toCsv() {
+		return seed + "," + lines + "," + score + "," + pieces + "," + config + "," + status;
+	}
+
+	/**
+	 * Formats the result as a JSON object on a single line, with the names
+	 * of CSV_HEADER as keys.
+	 *
+	 * @return - the JSON object
+	 */
+	public String toJson() {
+		return "{\"seed\":" + seed + ",\"lines\":" + lines + ",\"score\":" + score + ",\"pieces\":" + pieces
+				+ ",\"heightFactor\":" + config.heightFactor + ",\"balanceFactor\":" + config.balanceFactor
+				+ ",\"holeFactor\":" + config.holeFactor + ",\"blockFactor\":" + config.blockFactor
+				+ ",\"lineFactor\":" + config.lineFactor + ",\"status\":\"" + status + "\"}";
+	}
+	
+	public String toString() {
+		return toCsv();
+	}
+}
@@ -5,8 +5,7 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Random;
+import java.nio.ByteBuffer;
 /**
  * This Scene contains is the actual "game" scene.  It displays a level, the
  * current block being placed, the next block to place, the score, number of
@@ -29,7 +28,7 @@ public class GameScene
 	/** the level associated with this game */
 	private Level level;
 	
-	Random random;
+	GameRandom random;
 	
 	/** the block being placed */
 	private Block block = null;	
@@ -40,8 +39,8 @@ public class GameScene
 	/** tells if lines are being cleared */
 	private boolean clearing = false;
 
-	/** the lines to be removed */
-	private ArrayList lines = new ArrayList();
+	/** the lines to be removed, bit y is set if row y is completed */
+	private int lines = 0;
 
 	/** the size in pixels, of a block */
 	public final int BLOCK_SIZE = 24;
@@ -71,12 +70,36 @@ public class GameScene
 	/** tells if the game has started */
 	private boolean started = false;
 
+	/** the number of blocks added to the level */
+	private int pieces = 0;
+	
 	TetrisAgent agent; 
 	
+	/** records the blocks added to the level, or null */
+	GameReplay replay;
+	
+	/** the input events taken from the input map */
+	private final byte[] events = new byte[InputMap.CAPACITY];
+	
+	/** the number of placements that the block could not reach */
+	private int divergences = 0;
+	
 	public boolean isDead() {
 		return dead;
 	}
 	
+	public int getPieces() {
+		return pieces;
+	}
+	
+	/**
+	 * Gets the number of placements since the last reset that the block 
+	 * could not reach, because the level was in the way.
+	 */
+	public int getDivergences() {
+		return divergences;
+	}
+	
 	/**
 	 * Creates a Tetris level, loads the images, and begins dropping blocks.
 	 * 
@@ -85,13 +108,104 @@ public class GameScene
 	public GameScene(int seed, Player p, TetrisAgent agent)
 	{
 		this.agent = agent;
-        random = new Random(seed);
+        random = new GameRandom(seed);
 				
 		// begin placing the first block
 		player = p;		
 		level = new Level();
 	}
+	
+	/**
+	 * Restarts the scene with a new seed, reusing the level and blocks.  The
+	 * player should be reset separately.
+	 * 
+	 * @param seed - the random seed of the blocks
+	 */
+	public void reset(int seed)
+	{
+		random.setSeed(seed);
+		level.clearLevel();
+		block = null;
+		next = null;
+		clearing = false;
+		lines = 0;
+		timer = 0;
+		levelTimer = 0;
+		dropping = false;
+		dead = false;
+		deathCount = 0;
+		pause = false;
+		started = false;
+		pieces = 0;
+		divergences = 0;
+	}
 				
+	/**
+	 * Writes the state of the scene to a buffer: the flags, timers, random 
+	 * state, level and blocks.  The player is written separately.
+	 * 
+	 * @param buffer - the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer)
+	{
+		int flags = (started ? 1 : 0) | (dead ? 2 : 0) | (clearing ? 4 : 0) | (dropping ? 8 : 0) 
+				| (pause ? 16 : 0) | (CLEARING_ANIMATION ? 32 : 0) | (block != null ? 64 : 0);
+		buffer.put((byte)flags);
+		buffer.putInt(lines);
+		buffer.putInt(pieces);
+		buffer.putInt(deathCount);
+		buffer.putDouble(timer);
+		buffer.putDouble(levelTimer);
+		buffer.putLong(random.getState());
+		level.writeTo(buffer);
+		
+		if (block != null) 
+		{
+			block.writeTo(buffer);
+			next.writeTo(buffer);
+		}
+	}
+	
+	/**
+	 * Replaces the state of the scene with a state read from a buffer, as 
+	 * written by writeTo.  The level and blocks are reused.
+	 * 
+	 * @param buffer - the buffer to read from
+	 */
+	public void readFrom(ByteBuffer buffer)
+	{
+		int flags = buffer.get();
+		started = (flags & 1) != 0;
+		dead = (flags & 2) != 0;
+		clearing = (flags & 4) != 0;
+		dropping = (flags & 8) != 0;
+		pause = (flags & 16) != 0;
+		CLEARING_ANIMATION = (flags & 32) != 0;
+		lines = buffer.getInt();
+		pieces = buffer.getInt();
+		deathCount = buffer.getInt();
+		timer = buffer.getDouble();
+		levelTimer = buffer.getDouble();
+		random.setState(buffer.getLong());
+		level.readFrom(buffer);
+		
+		if ((flags & 64) != 0) 
+		{
+			if (block == null) 
+			{
+				block = new Block(0);
+				next = new Block(0);
+			}
+			block.readFrom(buffer);
+			next.readFrom(buffer);
+		}
+		else 
+		{
+			block = null;
+			next = null;
+		}
+	}
+	
 	/**
 	 * Updates the scene.
 	 * 
@@ -110,7 +224,7 @@ public class GameScene
 	 */
 	public void update(InputMap input)
 	{
-		String event = input.getInputEvent();	
+		int event = input.pollInputEvent();	
 		
 		//check if started
 		if (started == false) 
@@ -143,17 +257,18 @@ public class GameScene
 //					System.exit(0);
 //				}
 				// check if the player wants to restart
-				if (START.equals(event)) 
+				if (event == InputMap.EVENT_START) 
 				{
 					CLEARING_ANIMATION = true;
 					level = new Level();
 					newBlock();
 					clearing = false;
-					lines = new ArrayList();
+					lines = 0;
 					timer = 0;
 					levelTimer = 0;
 					dropping = false;
 					player = new Player();
+					pieces = 0;
 					dead = false;
 					deathCount = 0;
 					pause = false;
@@ -175,7 +290,7 @@ public class GameScene
 		// check if paused
 		if (pause == true)
 		{
-			if (START.equals(event)) 
+			if (event == InputMap.EVENT_START) 
 			{
 				pause = false;	
 			}
@@ -185,7 +300,7 @@ public class GameScene
 		else
 		{
 			// check pause button
-			if (START.equals(event))
+			if (event == InputMap.EVENT_START)
 			{
 				pause = true;
 				return;
@@ -198,10 +313,17 @@ public class GameScene
 			checkDropTimer();
 		}
 			
-		while (event != null) {
-		   checkInput(event);
-		   event = input.getInputEvent();
-		}	
+		// move the block to the placement of the agent
+		int move = agent.takePlacement();
+		if (move != TetrisAgent.NO_PLACEMENT) {
+			moveTo(Move.getRotation(move), Move.getColumn(move));
+		}
+		
+		// apply the event checked above, then the rest of the queue
+		if (event != InputMap.NO_EVENT) {
+			checkInput(event);
+			checkInput(input);
+		}
 	
 		
 		if (dropping) {
@@ -217,6 +339,142 @@ public class GameScene
 		return;
 	}
 	
+	/**
+	 * Plays the current block without the frame clock.  The queued input is 
+	 * applied at the spawn position, the block is dropped until it lands, and
+	 * any completed lines are cleared and scored immediately.  This produces
+	 * the same game as calling update until the next block appears, since the
+	 * agent only queues input when a new block is created.
+	 * 
+	 * @param input - the input map that contains a list of buttons pressed
+	 */
+	public void updateBlock(InputMap input)
+	{
+		// the first block
+		if (started == false) 
+		{
+			started = true;
+			newBlock();
+			return;
+		}
+		
+		if (dead)
+			return;
+
+		// move and rotate the block before it starts falling
+		int move = agent.takePlacement();
+		if (move != TetrisAgent.NO_PLACEMENT) {
+			moveTo(Move.getRotation(move), Move.getColumn(move));
+		}
+		else {
+			checkInput(input);
+		}
+		
+		// drop the block to its landing row, and skip the line clearing animation
+		landBlock();
+	}
+	
+	/**
+	 * Places the current block at a rotation and column, without the input
+	 * queue.  The block is moved from where it is with the collision checks 
+	 * of the key presses, dropped to its landing row in one step and added
+	 * to the level, and any completed lines are cleared.  If the level is 
+	 * in the way, the block is placed as far as it got, and the placement 
+	 * counts as a divergence.
+	 * 
+	 * @param rotation - the rotation state of the block
+	 * @param column - the x location of the block
+	 * @return - true if the block reached the rotation and column
+	 */
+	public boolean place(int rotation, int column)
+	{
+		if (block == null || dead || clearing) {
+			throw new IllegalStateException("There is no block to place");
+		}
+		
+		boolean reached = moveTo(rotation, column);
+		landBlock();
+		return reached;
+	}
+	
+	/**
+	 * Rotates the block clockwise, then moves it sideways, to a rotation and
+	 * column, as the key presses of the agent would with checkInput.  The 
+	 * agent plans its moves with Block.moveLeft and moveRight, which ignore
+	 * the level, so a high stack can stop the block before the placement it
+	 * planned.
+	 * 
+	 * @param rotation - the rotation state of the block
+	 * @param column - the x location of the block
+	 * @return - true if the block reached the rotation and column
+	 */
+	private boolean moveTo(int rotation, int column)
+	{
+		int rotations = (rotation - block.getRotation() + block.getNumRotations()) % block.getNumRotations();
+		for (int r=0; r<rotations; r++) {
+			checkInput(InputMap.EVENT_ROTATE_CW);
+		}
+		
+		// a rotation can kick the block off a wall, so the shift is counted from
+		// where the block is after rotating
+		int shift = column - block.getX();
+		for (int s=0; s<Math.abs(shift); s++) {
+			checkInput(shift < 0 ? InputMap.EVENT_MOVE_LEFT : InputMap.EVENT_MOVE_RIGHT);
+		}
+		
+		if (block.getRotation() != rotation || block.getX() != column) {
+			divergences++;
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Drops the current block to the row where it collides in one step, 
+	 * adds it to the level, and clears any completed lines immediately.
+	 */
+	private void landBlock()
+	{
+		do {
+			block.drop();
+		} while (!level.collision(block));
+		dropping = false;
+		levelTimer = 0;
+		agent.blockDropped(block);
+		lockBlock();
+		
+		if (clearing)
+			finishClearing();
+	}
+	
+	/**
+	 * Plays the current block at a rotation and column read from a replay.
+	 * The agent is not asked for moves, and the placement is not checked, 
+	 * since the block reached it when the game was recorded.  The block is
+	 * dropped from the spawn row, and any completed lines are cleared.
+	 * 
+	 * @param rotation - the rotation state of the block
+	 * @param x - the x location of the block
+	 * @return - false if the game has ended
+	 */
+	boolean replayBlock(int rotation, int x)
+	{
+		if (started == false) 
+		{
+			started = true;
+			newBlock();
+		}
+		
+		if (dead)
+			return false;
+		
+		block.setRotation(rotation);
+		block.setX(x);
+		landBlock();
+		
+		return !dead;
+	}
+	
 	/**
 	 * Checks if it's time to drop the block.
 	 */
@@ -243,23 +501,35 @@ public class GameScene
 		// check if this cause a collisoin
 		if (level.collision(block))
 		{
-			// add the block to the level
-			if (level.addBlockToLevel(block, false)) 
+			lockBlock();
+		}
+	}
+	
+	/**
+	 * Adds the block to the level above the row where it collided, and 
+	 * either starts clearing the completed lines or creates the next block.
+	 */
+	private void lockBlock()
+	{
+		// add the block to the level
+		if (level.addBlockToLevel(block, false)) 
+		{
+			pieces++;
+			if (replay != null)
+				replay.record(block);
+			lines = level.getClearedLineMask();
+					
+			if (lines != 0)
 			{
-				lines = level.getClearedLines();
-						
-				if (lines.size() > 0)
-				{
-					timer = 0;
-					clearing = true;
-				}
-				else
-					newBlock();
+				timer = 0;
+				clearing = true;
 			}
-			// if block couldn't be added, player is dead
 			else
-				dead = true;
+				newBlock();
 		}
+		// if block couldn't be added, player is dead
+		else
+			dead = true;
 	}
 	
 	/**
@@ -273,39 +543,59 @@ public class GameScene
 		// check the timer			
 		if (timer > 1 || !CLEARING_ANIMATION)  
 		{
-			level.clearLines(lines);
-			clearing = false;
-			newBlock();
-				
-			// calculate the points to add
-			// scoring function = (level + 1) * 50 * lines!
-			int size = lines.size();
-			int points = (player.getLevel() + 1) * 50;				
-			for (int i=2; i <= size; i++)
-			{
-				points = points*i;
-			}
-				
-			// update the player
-			player.addLines(size);
-			player.addScore(points);
+			finishClearing();
 		}		
 	}
 	
+	/**
+	 * Removes the cleared lines from the level, scores them and creates the
+	 * next block.
+	 */
+	private void finishClearing()
+	{
+		level.clearLines(lines);
+		clearing = false;
+		newBlock();
+			
+		// calculate the points to add
+		// scoring function = (level + 1) * 50 * lines!
+		int size = Integer.bitCount(lines);
+		int points = (player.getLevel() + 1) * 50;				
+		for (int i=2; i <= size; i++)
+		{
+			points = points*i;
+		}
+			
+		// update the player
+		player.addLines(size);
+		player.addScore(points);
+	}
+	
+	/**
+	 * Applies every queued input event to the block.
+	 * 
+	 * @param input - the input map that contains a list of buttons pressed
+	 */
+	private void checkInput(InputMap input)
+	{
+		int count = input.drainInputEvents(events);
+		for (int i=0; i<count; i++) {
+			checkInput(events[i]);
+		}
+	}
+	
 	/**
 	 * Checks for player input.  Checks if the block should be moved or 
 	 * rotated.
 	 * 
-	 * @param input - the player input
+	 * @param event - the code of the input event
 	 */
-	public void checkInput(String event)
+	public void checkInput(int event)
 	{
-		if (event == null) {
-			return;
-		}
-		
+		switch (event)
+		{
 		// check for a clockwise rotation
-		if (event.equals(ROTATE_CCW))
+		case InputMap.EVENT_ROTATE_CCW:
 		{
 			block.rotateCCW();		
 		
@@ -326,10 +616,11 @@ public class GameScene
 					block.setX(x);
 				}
 			}
+			break;
 		}
 		
 		// check for a counter-clockwise rotation
-		else if (event.equals(ROTATE_CW))
+		case InputMap.EVENT_ROTATE_CW:
 		{
 			block.rotateCW();		
 		
@@ -351,26 +642,30 @@ public class GameScene
 					block.setX(x);
 				}
 			}
+			break;
 		}
 	
 		// check for a left move
-		else if (event.equals(MOVE_LEFT))
+		case InputMap.EVENT_MOVE_LEFT:
 		{
 			block.moveLeft();
 	
 			if (level.collision(block)) {
 				block.moveRight();
 			}
+			break;
 		}
 			
 		// check for a right move
-		else if (event.equals(MOVE_RIGHT))
+		case InputMap.EVENT_MOVE_RIGHT:
 		{
 			block.moveRight();
 	
 			if (level.collision(block)) {
 				block.moveLeft();
 			}
+			break;
+		}
 		}		
 	}
 	
@@ -432,8 +727,11 @@ public class GameScene
 		}
 		else
 		{
+			// reuse the placed block as the next block
+			Block placed = block;
 			block = next;
-			next = new Block((int)((random.nextDouble()*1000.0)%7));
+			placed.reset((int)((random.nextDouble()*1000.0)%7));
+			next = placed;
 		}
 		
 		agent.newBlock(block, next, level);
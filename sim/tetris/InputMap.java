@@ -2,9 +2,13 @@ package sim.tetris;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 /**
- * Queue input events.
+ * Queue input events.  Events are byte codes in a ring buffer that is
+ * written by one producer thread, the agent or the keyboard, and read by the
+ * thread playing the game.  The positions of the buffer are volatile, so
+ * neither side takes a lock, and the scene takes all queued events at once
+ * with drainInputEvents.
  */
 public class InputMap implements KeyListener
 {
@@ -14,8 +18,33 @@ public class InputMap implements KeyListener
 	public String ROTATE_CW = "rotate CW";
 	public String ROTATE_CCW = "rotate CCW";
 	
-	/** the unput queue */
-	private ArrayList<String> inputQueue = new ArrayList<String>();
+	/** the codes of the events, in the order of the names above */
+	public static final int EVENT_START = 0;
+	public static final int EVENT_MOVE_LEFT = 1;
+	public static final int EVENT_MOVE_RIGHT = 2;
+	public static final int EVENT_ROTATE_CW = 3;
+	public static final int EVENT_ROTATE_CCW = 4;
+	
+	/** returned when the queue is empty */
+	public static final int NO_EVENT = -1;
+	
+	/** the names of the event codes */
+	private static final String[] NAMES = { "start", "left", "right", "rotate CW", "rotate CCW" };
+	
+	/**
+	 * the number of events the queue holds, a power of two, which is well
+	 * above the 8 events of the longest move
+	 */
+	public static final int CAPACITY = 64;
+	
+	/** the queued events */
+	private final byte[] queue = new byte[CAPACITY];
+	
+	/** the number of events read, only written by the consumer */
+	private volatile int head = 0;
+	
+	/** the number of events written, only written by the producer */
+	private volatile int tail = 0;
 	
 	/**
 	 * Adds a keylistener to the specified Canvas, and sets it to focusable.
@@ -33,23 +62,125 @@ public class InputMap implements KeyListener
 	/**
 	 * Adds an event to the input queue.
 	 * 
-	 * @param event - the input event
+	 * @param event - one of the EVENT codes
+	 * @return - false if the queue is full and the event was dropped
 	 */
-	public synchronized void addInputEvent(String event) {
-		inputQueue.add(event);
+	public boolean addInputEvent(int event) {
+		int t = tail;
+		if (t - head == CAPACITY) {
+			return false;
+		}
+		
+		queue[t & (CAPACITY - 1)] = (byte)event;
+		tail = t + 1;
+		return true;
+	}
+	
+	/**
+	 * Adds an event to the input queue.
+	 *
+	 * @param event - the name of the event, such as MOVE_LEFT
+	 * @return - false if the queue is full and the event was dropped
+	 */
+	public boolean addInputEvent(String event) {
+		return addInputEvent(getEvent(event));
 	}
 	
 	/**
 	 * Gets the next input event.
 	 * 
-	 * @return - the event, or null if the queue is empty
+	 * @return - the code of the event, or NO_EVENT if the queue is empty
 	 */
-	public synchronized String getInputEvent() {
-		if (inputQueue.size() > 0) {
-			return inputQueue.remove(0);
+	public int pollInputEvent() {
+		int h = head;
+		if (h == tail) {
+			return NO_EVENT;
 		}
 		
-		return null;
+		int event = queue[h & (CAPACITY - 1)];
+		head = h + 1;
+		return event;
+	}
+	
+	/**
+	 * Takes the queued events, up to the size of an array.
+	 *
+	 * @param events - the array the codes are copied to
+	 * @return - the number of events taken
+	 */
+	public int drainInputEvents(byte[] events) {
+		int h = head;
+		int count = Math.min(tail - h, events.length);
+		
+		for (int i=0; i<count; i++) {
+			events[i] = queue[(h + i) & (CAPACITY - 1)];
+		}
+		
+		head = h + count;
+		return count;
+	}
+	
+	/**
+	 * Gets the next input event.
+	 *
+	 * @return - the name of the event, or null if the queue is empty
+	 */
+	public String getInputEvent() {
+		int event = pollInputEvent();
+		return event != NO_EVENT ? NAMES[event] : null;
+	}
+	
+	/**
+	 * Gets the code of an event name.
+	 *
+	 * @param name - the name of the event, such as MOVE_LEFT
+	 * @return - the code of the event
+	 */
+	public static int getEvent(String name) {
+		for (int event=0; event<NAMES.length; event++) {
+			if (NAMES[event].equals(name)) {
+				return event;
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown input event: " + name);
+	}
+	
+	/**
+	 * Removes every queued event.  Called by the consumer.
+	 */
+	public void clear() {
+		head = tail;
+	}
+	
+	/**
+	 * Writes the queued events to a buffer, as a count followed by the code
+	 * of each event.  Called by the consumer.
+	 * 
+	 * @param buffer - the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		int h = head;
+		int count = tail - h;
+		buffer.putShort((short)count);
+		
+		for (int i=0; i<count; i++) {
+			buffer.put(queue[(h + i) & (CAPACITY - 1)]);
+		}
+	}
+	
+	/**
+	 * Replaces the queued events with events read from a buffer, as written
+	 * by writeTo.  Must not be called while another thread adds events.
+	 * 
+	 * @param buffer - the buffer to read from
+	 */
+	public void readFrom(ByteBuffer buffer) {
+		clear();
+		
+		for (int i=buffer.getShort(); i>0; i--) {
+			addInputEvent(buffer.get());
+		}
 	}
 	
 	/**
@@ -57,11 +188,11 @@ public class InputMap implements KeyListener
 	 */
 	public void keyPressed(KeyEvent e) 
 	{				
-		if (e.getKeyChar() == KeyEvent.VK_ENTER) inputQueue.add(START);
-		if (e.getKeyCode() == KeyEvent.VK_LEFT) inputQueue.add(MOVE_LEFT);
-		if (e.getKeyCode() == KeyEvent.VK_RIGHT) inputQueue.add(MOVE_RIGHT); 
-		if (e.getKeyCode() == KeyEvent.VK_CONTROL) inputQueue.add(ROTATE_CW);
-		if (e.getKeyCode() == KeyEvent.VK_SPACE) inputQueue.add(ROTATE_CCW);
+		if (e.getKeyChar() == KeyEvent.VK_ENTER) addInputEvent(EVENT_START);
+		if (e.getKeyCode() == KeyEvent.VK_LEFT) addInputEvent(EVENT_MOVE_LEFT);
+		if (e.getKeyCode() == KeyEvent.VK_RIGHT) addInputEvent(EVENT_MOVE_RIGHT);
+		if (e.getKeyCode() == KeyEvent.VK_CONTROL) addInputEvent(EVENT_ROTATE_CW);
+		if (e.getKeyCode() == KeyEvent.VK_SPACE) addInputEvent(EVENT_ROTATE_CCW);
 		
 //		if (e.getKeyCode() == KeyEvent.VK_SHIFT) Game.ULTRA_MODE = !Game.ULTRA_MODE;
 		
@@ -69,7 +200,7 @@ public class InputMap implements KeyListener
 		if (e.getKeyChar() == KeyEvent.VK_ESCAPE)
 			System.exit(0);	
 	}
-
+	
 	/**
 	 * Not implemented.
 	 */
@@ -1,41 +1,97 @@
 package sim.tetris;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Random;
 /**
  * A level is a 10 wide by 20 tall grid which is composed of tiles.  A level
- * starts empty, but is filled up by blocks placed in it.
+ * starts empty, but is filled up by blocks placed in it.  Alongside the tile
+ * data, each row is kept as a bitmask so that collisions and completed lines
+ * can be found with shifts and ANDs instead of scanning every tile.
  */
 public class Level
 {
     /** the level height */
-	public final int LEVEL_HEIGHT = 20;
+	public static final int LEVEL_HEIGHT = 20;
 
 	/** the level width */
-	public final int LEVEL_WIDTH = 10;
+	public static final int LEVEL_WIDTH = 10;
 
     /** the left bounds of the level, inclusive */
-	public final int LEFT_BOUNDS = 0;
+	public static final int LEFT_BOUNDS = 0;
 
 	/** the right bounds of the level, inclusive */
-	public final int RIGHT_BOUNDS = LEVEL_WIDTH-1;
+	public static final int RIGHT_BOUNDS = LEVEL_WIDTH-1;
 
 	/** the y starting position of a block */
-	public final int START_Y = -2;	
+	public static final int START_Y = -2;	
+	
+	/** bitmask of a completely filled row */
+	public static final int FULL_ROW = (1 << LEVEL_WIDTH) - 1;
 	
 	/** the tiles that make up the level */
 	private int[][] level;	
 	
+	/** 
+	 * The occupancy of each row as a bitmask, bit x is set if the tile at 
+	 * column x is filled.  This mirrors the level data and is used for
+	 * collision and line detection.
+	 */
+	private int[] rows;
+	
+	/**
+	 * The occupancy of each column as a bitmask, bit y is set if the tile at
+	 * row y is filled.  Column heights and holes are derived from these.
+	 */
+	private int[] cols;
+	
+	/** the completed rows, bit y is set if row y is completely filled */
+	private int fullRows;
+	
+	/** the tiles of each row that were added with color, as a bitmask */
+	private int[] marks;
+	
+	/** 
+	 * Zobrist hash of the filled and marked tiles, updated as blocks are 
+	 * added and lines are cleared.
+	 */
+	private long hash;
+	
+	/** the Zobrist key of each filled tile, indexed [y][x] */
+	private static final long[][] TILE_KEYS = new long[LEVEL_HEIGHT][LEVEL_WIDTH];
+	
+	/** the Zobrist key of each marked tile, indexed [y][x] */
+	private static final long[][] MARK_KEYS = new long[LEVEL_HEIGHT][LEVEL_WIDTH];
+	
+	// fixed keys, so that hashes are the same in every run
+	static
+	{
+		Random random = new Random(0x5eed);
+		for (int y=0; y<LEVEL_HEIGHT; y++)
+		{
+			for (int x=0; x<LEVEL_WIDTH; x++)
+			{
+				TILE_KEYS[y][x] = random.nextLong();
+				MARK_KEYS[y][x] = random.nextLong();
+			}
+		}
+	}
+	
 	/**
 	 * Creates an empty level.
 	 */
 	public Level()
 	{
 		level = new int[LEVEL_HEIGHT][LEVEL_WIDTH];
+		rows = new int[LEVEL_HEIGHT];
+		cols = new int[LEVEL_WIDTH];
+		marks = new int[LEVEL_HEIGHT];
 		clearLevel();
 	}
 	
 	/**
-	 * Gets the level data.
+	 * Gets the level data.  The data should be treated as read only, since 
+	 * the row masks are only updated through the methods of this class.
 	 * 
 	 * @return - the level data about the tiles
 	 */
@@ -44,6 +100,131 @@ public class Level
 		return level;
 	}
 	
+	/**
+	 * Gets the occupancy bitmask of a row.
+	 * 
+	 * @param y - the row
+	 * @return - the bitmask, bit x is set if the tile at column x is filled
+	 */
+	public int getRowMask(int y)
+	{
+		return rows[y];
+	}
+	
+	/**
+	 * Gets the tiles of a row that were added with color as a bitmask.
+	 * 
+	 * @param y - the row
+	 * @return - the bitmask, bit x is set if the tile at column x is marked
+	 */
+	public int getMarkMask(int y)
+	{
+		return marks[y];
+	}
+	
+	/**
+	 * Gets the Zobrist hash of the level.  Levels with the same filled and 
+	 * marked tiles have the same hash.
+	 * 
+	 * @return - the hash
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+	
+	/**
+	 * Gets the number of filled tiles in a row.
+	 * 
+	 * @param y - the row
+	 * @return - the number of filled tiles
+	 */
+	public int getRowFillCount(int y)
+	{
+		return Integer.bitCount(rows[y]);
+	}
+	
+	/**
+	 * Gets the occupancy bitmask of a column.
+	 * 
+	 * @param x - the column
+	 * @return - the bitmask, bit y is set if the tile at row y is filled
+	 */
+	public int getColumnMask(int x)
+	{
+		return cols[x];
+	}
+	
+	/**
+	 * Gets the row of the highest tile in a column.
+	 * 
+	 * @param x - the column
+	 * @return - the row of the top tile, or LEVEL_HEIGHT if the column is 
+	 *           empty
+	 */
+	public int getColumnTop(int x)
+	{
+		return cols[x] == 0 ? LEVEL_HEIGHT : Integer.numberOfTrailingZeros(cols[x]);
+	}
+	
+	/**
+	 * Gets the height of a column.
+	 * 
+	 * @param x - the column
+	 * @return - the number of rows from the bottom up to the top tile
+	 */
+	public int getColumnHeight(int x)
+	{
+		return LEVEL_HEIGHT - getColumnTop(x);
+	}
+	
+	/**
+	 * Gets the number of holes in a column, which are the empty tiles below
+	 * the top tile of the column.
+	 * 
+	 * @param x - the column
+	 * @return - the number of holes
+	 */
+	public int getColumnHoles(int x)
+	{
+		return getColumnHeight(x) - Integer.bitCount(cols[x]);
+	}
+	
+	/**
+	 * Gets the total number of holes in the level.
+	 * 
+	 * @return - the number of empty tiles below the top tile of each column
+	 */
+	public int getHoles()
+	{
+		int holes = 0;
+		
+		for (int x=0; x<LEVEL_WIDTH; x++)
+		{
+			holes += getColumnHoles(x);
+		}
+		
+		return holes;
+	}
+	
+	/**
+	 * Gets the highest row containing a tile.
+	 * 
+	 * @return - the row of the highest tile, or LEVEL_HEIGHT if the level is
+	 *           empty
+	 */
+	public int getTopRow()
+	{
+		int occupied = 0;
+		
+		for (int x=0; x<LEVEL_WIDTH; x++)
+		{
+			occupied |= cols[x];
+		}
+		
+		return occupied == 0 ? LEVEL_HEIGHT : Integer.numberOfTrailingZeros(occupied);
+	}
+	
 	/**
 	 * Clears the level, setting all of the tiles to be blank.
 	 */
@@ -55,7 +236,17 @@ public class Level
 			{
 				level[i][j] = 0;
 			}
+			
+			rows[i] = 0;
+			marks[i] = 0;
 		}		
+		
+		for (int j=0; j<LEVEL_WIDTH; j++) 
+		{
+			cols[j] = 0;
+		}
+		fullRows = 0;
+		hash = 0;
 	}
 	
 	/**
@@ -97,35 +288,41 @@ public class Level
 		// get the position of the block
 		int x = block.getX();
 		int y = block.getY();
-		int size = block.getBlockSize();
+		int[] masks = block.getRowMasks();
 	
-		for (int i=0; i<size; i++) 
+		for (int i=0; i<masks.length; i++) 
 		{
-			for (int j=0; j<size; j++) 
-			{
-				// get the tile location relative to the level
-				int cx = x + j;
-				int cy = y + i;
-				
-				// check the bounds of the tile
-				// check for a collision if this tile exist.
-				if (block.getBlockData()[i][j] == 1)
-				{
- 					if (cx < LEVEL_WIDTH && cy < LEVEL_HEIGHT)				
-						if (cx >= 0 && cy >= 0 && level[cy][cx] > 0) 
-							return true;
-							
-					// check if the block is at the bottom of the level
-					if (cy >= LEVEL_HEIGHT)
-						return true;
-				}	
-			}
+			if (masks[i] == 0)
+				continue;
+			
+			// check if the block is at the bottom of the level
+			int cy = y + i;
+			if (cy >= LEVEL_HEIGHT)
+				return true;
+
+			// tiles above the level or outside of the walls never collide
+			if (cy >= 0 && (shift(masks[i], x) & rows[cy]) != 0)
+				return true;
 		}
 
 		// no collision
 		return false;		
 	}
 	
+	/**
+	 * Shifts a row mask of a block to its column in the level.  Tiles shifted
+	 * past the left wall are dropped, tiles past the right wall end up above
+	 * bit 9 and never intersect a row of the level.
+	 * 
+	 * @param mask - the row mask of the block
+	 * @param x - the x position of the block
+	 * @return - the mask relative to the level
+	 */
+	private static int shift(int mask, int x)
+	{
+		return x >= 0 ? mask << x : mask >>> -x;
+	}
+	
 	/**
 	 * Adds the block to the level.  It assumes the block was just dropped, and
 	 * then collided with the level.
@@ -158,7 +355,14 @@ public class Level
 						}
 						else {
 							level[cy][cx] = 9;							
+							marks[cy] |= 1 << cx;
+							hash ^= MARK_KEYS[cy][cx];
 						}
+						rows[cy] |= 1 << cx;
+						hash ^= TILE_KEYS[cy][cx];
+						cols[cx] |= 1 << cy;
+						if (rows[cy] == FULL_ROW)
+							fullRows |= 1 << cy;
 					}
 					else 
 						return false;
@@ -179,26 +383,24 @@ public class Level
 	{
 		ArrayList<Integer> lines = new ArrayList<Integer>();
 		
-		for (int i=0; i<LEVEL_HEIGHT; i++)
+		for (int mask=fullRows; mask!=0; mask&=mask-1)
 		{
-			int count = 0;
-			
-			for (int j=0; j<LEVEL_WIDTH; j++)
-			{
-				if (level[i][j] > 0)
-					count++;
-			}
-			
-			// check if the level should be added to the clear list
-			if (count== LEVEL_WIDTH)
-			{
-				lines.add(new Integer(i));
-			}
+			lines.add(Integer.valueOf(Integer.numberOfTrailingZeros(mask)));
 		}
 		
 		return lines;
 	}
 	
+	/**
+	 * Finds the lines that are completed, without allocating a list.
+	 * 
+	 * @return - a bitmask where bit y is set if row y is completed
+	 */
+	public int getClearedLineMask()
+	{
+		return fullRows;
+	}
+	
 	/**
 	 * Clears the specified lines from the level.
 	 * 
@@ -210,16 +412,193 @@ public class Level
 		// iterate through the lines that need to be cleared
 		for (int i=0; i<lines.size(); i++)
 		{
-			int line = ((Integer)lines.get(i)).intValue();
-
-			for (int j=line; j>0; j--)
-			{
-				level[j] = level[j-1];			
+			clearLine(((Integer)lines.get(i)).intValue());
+		}		
+	}
+	
+	/**
+	 * Clears the lines specified by a bitmask from the level.
+	 * 
+	 * @param mask - the lines to clear, bit y is set if row y should be 
+	 *               cleared
+	 * @return - the number of lines cleared
+	 */
+	public int clearLines(int mask)
+	{
+		int count = 0;
+		
+		// clear from the top down, so the remaining lines keep their index
+		while (mask != 0)
+		{
+			int line = Integer.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			clearLine(line);
+			count++;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Clears all of the completed lines from the level.
+	 * 
+	 * @return - the number of lines cleared
+	 */
+	public int clearFullLines()
+	{
+		return clearLines(getClearedLineMask());
+	}
+	
+	/**
+	 * Removes a single line, moving every line above it down one space.  The
+	 * row arrays are rotated rather than reallocated, and each column mask 
+	 * is shifted down above the line.
+	 * 
+	 * @param line - the line to remove
+	 */
+	private void clearLine(int line)
+	{
+		int[] cleared = level[line];
+		
+		// remove the rows that move from the hash
+		for (int j=0; j<=line; j++)
+		{
+			hash ^= rowHash(j, rows[j], marks[j]);
+		}
+		
+		for (int j=line; j>0; j--)
+		{
+			level[j] = level[j-1];
+			rows[j] = rows[j-1];
+			marks[j] = marks[j-1];
+			hash ^= rowHash(j, rows[j], marks[j]);
+		}
+		
+		int above = (1 << line) - 1;
+		int below = ~((1 << (line + 1)) - 1);
+		for (int j=0; j<LEVEL_WIDTH; j++)
+		{
+			cols[j] = (cols[j] & below) | ((cols[j] & above) << 1);
+		}
+		fullRows = (fullRows & below) | ((fullRows & above) << 1);
+		
+		// clear the top line
+		for (int j=0; j<LEVEL_WIDTH; j++)
+		{
+			cleared[j] = 0;
+		}
+		level[0] = cleared;
+		rows[0] = 0;
+		marks[0] = 0;
+	}
+	
+	/**
+	 * Computes the Zobrist hash of the tiles of a row.
+	 * 
+	 * @param y - the row
+	 * @param filled - the filled tiles of the row
+	 * @param marked - the marked tiles of the row
+	 * @return - the hash of the row
+	 */
+	private static long rowHash(int y, int filled, int marked)
+	{
+		long h = 0;
+		
+		for (; filled != 0; filled &= filled - 1)
+			h ^= TILE_KEYS[y][Integer.numberOfTrailingZeros(filled)];
+		for (; marked != 0; marked &= marked - 1)
+			h ^= MARK_KEYS[y][Integer.numberOfTrailingZeros(marked)];
+		
+		return h;
+	}
+	
+	/**
+	 * Copies the tiles of another level into this level, without allocating.
+	 * 
+	 * @param other - the level to copy
+	 */
+	public void copyFrom(Level other) {
+		for (int y=0; y<LEVEL_HEIGHT; y++) {
+			System.arraycopy(other.level[y], 0, level[y], 0, LEVEL_WIDTH);
+		}
+		System.arraycopy(other.rows, 0, rows, 0, LEVEL_HEIGHT);
+		System.arraycopy(other.cols, 0, cols, 0, LEVEL_WIDTH);
+		System.arraycopy(other.marks, 0, marks, 0, LEVEL_HEIGHT);
+		fullRows = other.fullRows;
+		hash = other.hash;
+	}
+	
+	/**
+	 * Writes the tiles to a buffer.  The masks of the filled and marked tiles
+	 * of each row are written first, followed by the colors of the filled 
+	 * tiles that are not marked, packed two to a byte.
+	 * 
+	 * @param buffer - the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		for (int y=0; y<LEVEL_HEIGHT; y++) {
+			buffer.putShort((short)rows[y]);
+			buffer.putShort((short)marks[y]);
+		}
+		
+		int colors = 0;
+		int count = 0;
+		for (int y=0; y<LEVEL_HEIGHT; y++) {
+			for (int filled = rows[y] & ~marks[y]; filled != 0; filled &= filled - 1) {
+				colors |= level[y][Integer.numberOfTrailingZeros(filled)] << (4*count);
+				if (++count == 2) {
+					buffer.put((byte)colors);
+					colors = 0;
+					count = 0;
+				}
+			}
+		}
+		
+		if (count > 0) {
+			buffer.put((byte)colors);
+		}
+	}
+	
+	/**
+	 * Replaces the tiles with tiles read from a buffer, as written by writeTo.
+	 * 
+	 * @param buffer - the buffer to read from
+	 */
+	public void readFrom(ByteBuffer buffer) {
+		clearLevel();
+		for (int y=0; y<LEVEL_HEIGHT; y++) {
+			rows[y] = buffer.getShort() & FULL_ROW;
+			marks[y] = buffer.getShort() & FULL_ROW;
+		}
+		
+		int colors = 0;
+		int count = 0;
+		for (int y=0; y<LEVEL_HEIGHT; y++) {
+			for (int x=0; x<LEVEL_WIDTH; x++) {
+				int bit = 1 << x;
+				if ((marks[y] & bit) != 0) {
+					level[y][x] = 9;
+				}
+				else if ((rows[y] & bit) != 0) {
+					if (count == 0) {
+						colors = buffer.get();
+						count = 2;
+					}
+					level[y][x] = colors & 0xF;
+					colors >>= 4;
+					count--;
+				}
+				
+				if ((rows[y] & bit) != 0) {
+					cols[x] |= 1 << y;
+				}
 			}
 			
-			// clear the top line
-			level[0] = new int[10];			
-		}		
+			if (rows[y] == FULL_ROW) {
+				fullRows |= 1 << y;
+			}
+			hash ^= rowHash(y, rows[y], marks[y]);
+		}
 	}
 	
 	public Level copy() {
@@ -228,7 +607,12 @@ public class Level
 			for (int x=0; x<level[y].length; x++) {				
 				l.level[y][x] = level[y][x];
 			}			
+			l.rows[y] = rows[y];
 		}
+		System.arraycopy(cols, 0, l.cols, 0, LEVEL_WIDTH);
+		System.arraycopy(marks, 0, l.marks, 0, LEVEL_HEIGHT);
+		l.fullRows = fullRows;
+		l.hash = hash;
 		return l;
 	}
 	
@@ -2,7 +2,18 @@ package sim.tetris;
 
 import java.util.ArrayList;
 
+/**
+ * A move as the list of key presses that reaches it, with the level it 
+ * produces.  Used by createAllMoves and the interactive path.
+ * 
+ * <p>The search of the agent does not create Move objects.  It encodes a
+ * placement as an int, with the block type, rotation, column and landing
+ * row in 8 bits each, using the static methods of this class.
+ */
 public class Move {
+	
+	/** added to the column and row, which can be negative, when encoding */
+	private static final int OFFSET = 16;
 		
 	private ArrayList<String> moves;
 	private Level level;
@@ -27,14 +38,17 @@ public class Move {
 		return level;
 	}
 	
-	public double getEvaluation( double HEIGHT_FACTOR,
-			 double BALANCE_FACTOR,
-			 double HOLE_FACTOR,
-			 double BLOCK_FACTOR,
-			 double LINE_FACTOR ) {
+	/**
+	 * Gets the evaluation of this move, evaluating the level the first time.
+	 * 
+	 * @param evaluator - the board evaluator
+	 * @param weights - the weight vector of the evaluator
+	 * @return - the evaluation of the level after this move
+	 */
+	public double getEvaluation(BoardEvaluator evaluator, double[] weights) {
 		
 		if (evaluated == false) {
-			calculateEvaluation(HEIGHT_FACTOR, BALANCE_FACTOR, HOLE_FACTOR, BLOCK_FACTOR, LINE_FACTOR);
+			evaluation = evaluator.evaluate(level, weights);
 			evaluated = true;
 		}
 		
@@ -45,97 +59,46 @@ public class Move {
 		return moves;
 	}
 	
-	private void calculateEvaluation( double HEIGHT_FACTOR,
-			 double BALANCE_FACTOR,
-			 double HOLE_FACTOR,
-			 double BLOCK_FACTOR,
-			 double LINE_FACTOR ) {
-
-		// clear the lines
-		evaluation += level.getClearedLines().size()*LINE_FACTOR;
-		level.clearLines(level.getClearedLines());
-		int[][] data = level.getLevelData();	
-		
-		// maximum height
-		boolean done = false;
-		for (int y=0; y<data.length; y++) {
-			for (int x=0; x<data[y].length; x++) {
-				if (data[y][x] > 0) {
-					evaluation += y/20.0*HEIGHT_FACTOR;
-					done = true;
-					break;
-				}
-			}
-			if (done) break;
-		}
-		
-		// balance
-		for (int x=0; x<9; x++) {
-			int left = 20;			
-			for (int y=0; y<20; y++) {
-				if (data[y][x] > 0) {
-					left = y;
-					break;
-				}
-			}
-			int right = 20;			
-			for (int y=0; y<20; y++) {
-				if (data[y][x+1] > 0) {
-					right = y;
-					break;
-				}
-			}
-			
-			double diff = BALANCE_FACTOR*Math.abs(left - right);
-			diff = diff*diff;
-			if (x == 0) {
-				if (left > right) 
-					evaluation -= 2.5*diff;
-				else 
-					evaluation -= 0.4*diff;					
-			}
-			else if (x ==8) {
-				if (left < right) 
-					evaluation -= 2.5*diff;
-				else 
-					evaluation -= 0.4*diff;					
-			}
-			else {
-				evaluation -= diff;
-			}
-		}
-		
-		// holes and blocks
-		for (int x=0; x<10; x++) {
-			int top = 20;
-			
-			for (int y=0; y<20; y++) {
-				if (data[y][x] > 0) {
-					top = y;
-					break;
-				}
-			}
-			
-			boolean block = false;
-			for (int y=(top + 1); y<20; y++) {
-				if (data[y][x] == 0) {
-					if (block == false) {
-						for (int u=(y-1); u >= 0; u--) {
-							if (data[u][x] > 0) {
-								if (data[u][x] == 9) {
-									evaluation -= BLOCK_FACTOR;
-								}
-							}
-							else {
-								break;
-							}
-						}						
-						block = true;
-					}
-
-					evaluation -= HOLE_FACTOR;					
-				}
-			}
-		}			
-	}	
+	/**
+	 * Encodes a placement as an int.
+	 * 
+	 * @param type - the type of block
+	 * @param rotation - the rotation state of the block
+	 * @param column - the x position of the block
+	 * @param row - the y position of the block when it lands, as passed to 
+	 *              Level.addBlockToLevel
+	 * @return - the encoded placement
+	 */
+	public static int encode(int type, int rotation, int column, int row) {
+		return type << 24 | rotation << 16 | (column + OFFSET) << 8 | (row + OFFSET);
+	}
+	
+	public static int getType(int move) {
+		return move >>> 24;
+	}
+	
+	public static int getRotation(int move) {
+		return (move >>> 16) & 0xFF;
+	}
+	
+	public static int getColumn(int move) {
+		return ((move >>> 8) & 0xFF) - OFFSET;
+	}
+	
+	public static int getRow(int move) {
+		return (move & 0xFF) - OFFSET;
+	}
+	
+	/**
+	 * Positions a block at an encoded placement.
+	 * 
+	 * @param move - the encoded placement
+	 * @param block - the block to position
+	 */
+	public static void place(int move, Block block) {
+		block.reset(getType(move));
+		block.setRotation(getRotation(move));
+		block.setX(getColumn(move));
+		block.setY(getRow(move));
+	}
 }
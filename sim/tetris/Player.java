@@ -1,5 +1,7 @@
 package sim.tetris;
 
+import java.nio.ByteBuffer;
+
 /**
  * A player represents somebody playing the game.  They have a score, are on 
  * a certain level, and have a certain number of lines cleared.
@@ -25,6 +27,41 @@ public class Player
 		lines = 0;
 	}	
 	
+    /**
+     * Resets the level, lines and score of the player to 0.
+     */
+	public void reset()
+	{
+		score = 0;
+		level = 0;
+		lines = 0;
+	}
+	
+	/**
+	 * Writes the score, level and lines to a buffer.
+	 * 
+	 * @param buffer - the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer)
+	{
+		buffer.putInt(score);
+		buffer.putInt(level);
+		buffer.putInt(lines);
+	}
+	
+	/**
+	 * Sets the score, level and lines to values read from a buffer, as
+	 * written by writeTo.
+	 * 
+	 * @param buffer - the buffer to read from
+	 */
+	public void readFrom(ByteBuffer buffer)
+	{
+		score = buffer.getInt();
+		level = buffer.getInt();
+		lines = buffer.getInt();
+	}
+	
     /**
      * Sets the level of the player.
      * 
@@ -0,0 +1,109 @@
+package sim.tetris;
+
+/**
+ * Board evaluator that scans the tiles of the level for every feature.  This
+ * is the original implementation of the heuristic, kept as a reference for
+ * checking and benchmarking other evaluators.
+ */
+public class ScanningBoardEvaluator implements BoardEvaluator {
+
+	/**
+	 * Evaluates the level.  The completed lines are cleared from the level as
+	 * part of the evaluation.
+	 * 
+	 * @param level - the level to evaluate
+	 * @param weights - the weight vector
+	 * @return - the evaluation
+	 */
+	public double evaluate(Level level, double[] weights) {
+		double evaluation = 0;
+
+		// clear the lines
+		evaluation += level.clearFullLines()*weights[LINE];
+		int[][] data = level.getLevelData();	
+		
+		// maximum height
+		boolean done = false;
+		for (int y=0; y<data.length; y++) {
+			for (int x=0; x<data[y].length; x++) {
+				if (data[y][x] > 0) {
+					evaluation += y/weights[HEIGHT_SCALE]*weights[HEIGHT];
+					done = true;
+					break;
+				}
+			}
+			if (done) break;
+		}
+		
+		// balance
+		for (int x=0; x<9; x++) {
+			int left = 20;			
+			for (int y=0; y<20; y++) {
+				if (data[y][x] > 0) {
+					left = y;
+					break;
+				}
+			}
+			int right = 20;			
+			for (int y=0; y<20; y++) {
+				if (data[y][x+1] > 0) {
+					right = y;
+					break;
+				}
+			}
+			
+			double diff = weights[BALANCE]*Math.abs(left - right);
+			diff = diff*diff;
+			if (x == 0) {
+				if (left > right) 
+					evaluation -= weights[EDGE_LOW]*diff;
+				else 
+					evaluation -= weights[EDGE_HIGH]*diff;					
+			}
+			else if (x ==8) {
+				if (left < right) 
+					evaluation -= weights[EDGE_LOW]*diff;
+				else 
+					evaluation -= weights[EDGE_HIGH]*diff;					
+			}
+			else {
+				evaluation -= diff;
+			}
+		}
+		
+		// holes and blocks
+		for (int x=0; x<10; x++) {
+			int top = 20;
+			
+			for (int y=0; y<20; y++) {
+				if (data[y][x] > 0) {
+					top = y;
+					break;
+				}
+			}
+			
+			boolean block = false;
+			for (int y=(top + 1); y<20; y++) {
+				if (data[y][x] == 0) {
+					if (block == false) {
+						for (int u=(y-1); u >= 0; u--) {
+							if (data[u][x] > 0) {
+								if (data[u][x] == 9) {
+									evaluation -= weights[BLOCK];
+								}
+							}
+							else {
+								break;
+							}
+						}						
+						block = true;
+					}
+
+					evaluation -= weights[HOLE];					
+				}
+			}
+		}
+		
+		return evaluation;
+	}
+}
@@ -0,0 +1,52 @@
+package sim.tetris;
+
+/**
+ * Counts the work done by an agent to pick its moves.  The counters are 
+ * plain fields updated by the agent's thread, so that counting costs 
+ * nothing next to the search.  Readers such as the simulation DoFns add 
+ * them to their metrics, then clear them.
+ */
+public class SearchStats {
+
+	/** the number of blocks the agent picked a move for */
+	long decisions = 0;
+	
+	/** the number of placements that fit in the level, including the lookahead */
+	long generated = 0;
+	
+	/** the number of levels scored by the evaluator, not counting cache hits */
+	long evaluated = 0;
+	
+	/** the time spent picking moves, in nanoseconds */
+	long nanos = 0;
+	
+	public long getDecisions() {
+		return decisions;
+	}
+	
+	public long getGenerated() {
+		return generated;
+	}
+	
+	public long getEvaluated() {
+		return evaluated;
+	}
+	
+	public long getNanos() {
+		return nanos;
+	}
+	
+	/**
+	 * Sets every counter to 0.
+	 */
+	public void clear() {
+		decisions = 0;
+		generated = 0;
+		evaluated = 0;
+		nanos = 0;
+	}
+	
+	public String toString() {
+		return "decisions=" + decisions + ", generated=" + generated + ", evaluated=" + evaluated + ", nanos=" + nanos;
+	}
+}
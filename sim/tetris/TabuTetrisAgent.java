@@ -20,29 +20,594 @@ public class TabuTetrisAgent implements TetrisAgent {
 	public double BLOCK_FACTOR = 1.0 + Math.random()*0.1;
 	public double LINE_FACTOR = 1.0 + Math.random()*0.1;
 	
+	/** scores the level after each move */
+	private BoardEvaluator evaluator = new ColumnBoardEvaluator();
+	
+	/** the weight vector passed to the evaluator, built from the factors */
+	private final double[] weights = new double[BoardEvaluator.NUM_WEIGHTS];
+	
+	/** 
+	 * the default number of cached evaluations, enough for every move of a 
+	 * few blocks, since most repeated levels come from different moves of the 
+	 * same block landing in the same place
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+	
+	/** evaluations of previously seen levels, or null to always evaluate */
+	private EvaluationCache cache = new EvaluationCache(DEFAULT_CACHE_SIZE);
+	
+	/** evaluates the levels of a block's moves together, or null to evaluate them one at a time */
+	private BatchBoardEvaluator batch = null;
+	
+	/** the furthest a block is moved left or right by a move */
+	public static final int MAX_SHIFT = 5;
+	
+	/** the number of moves generated for each block */
+	public static final int MAX_MOVES = (2*MAX_SHIFT + 1)*4;
+	
+	/** scratch level that each move is played on */
+	private final Level board = new Level();
+	
+	/** scratch block that each move is played with */
+	private final Block piece = new Block(0);
+	
+	/** the placements of the generated moves, encoded by Move.encode */
+	private final int[] moves = new int[MAX_MOVES];
+	
+	/** the evaluation of the generated moves, in the order of moves */
+	private final double[] moveEvaluations = new double[MAX_MOVES];
+	
+	/** the number of valid moves generated for the current block */
+	private int moveCount = 0;
+	
+	/** 
+	 * the number of best moves that are searched again with the next block,
+	 * 0 to pick the best move of the current block only
+	 */
+	private int lookahead = 0;
+	
+	/** scratch level holding the current block, that the next block is played on */
+	private final Level nextBoard = new Level();
+	
+	/** the indices of the moves searched with the next block */
+	private final int[] candidates = new int[MAX_MOVES];
+	
+	/** the evaluations of the moves of the next block */
+	private final double[] nextEvaluations = new double[MAX_MOVES];
+	
+	/** the index in the batch of the level of each move, or -1 if the evaluation is known */
+	private final int[] batchIndices = new int[MAX_MOVES];
+	
+	/** the hashes of the levels in the batch */
+	private final long[] batchKeys = new long[MAX_MOVES];
+	
+	/** the evaluations of the levels in the batch */
+	private final double[] batchEvaluations = new double[MAX_MOVES];
+	
+	/** the work done to pick the moves */
+	private final SearchStats stats = new SearchStats();
+	
+	/** tells if moves are passed to the scene by takePlacement instead of key presses */
+	private boolean directPlacement = false;
+	
+	/** the move picked for the current block, when placing directly */
+	private int placement = NO_PLACEMENT;
+	
 	/**
 	 *
 	 */
 	public TabuTetrisAgent(InputMap inputMap) {
 		this.inputMap = inputMap;
+		
+		weights[BoardEvaluator.EDGE_LOW] = 2.5;
+		weights[BoardEvaluator.EDGE_HIGH] = 0.4;
+		weights[BoardEvaluator.HEIGHT_SCALE] = 20.0;
+	}
+	
+	/**
+	 * Creates an agent with the specified factors.
+	 */
+	public TabuTetrisAgent(InputMap inputMap, AgentConfig config) {
+		this(inputMap);
+		config.applyTo(this);
+	}
+	
+	/**
+	 * Sets the evaluator used to score moves.
+	 * 
+	 * @param evaluator - the board evaluator
+	 */
+	public void setEvaluator(BoardEvaluator evaluator) {
+		this.evaluator = evaluator;
+		
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+	
+	public BoardEvaluator getEvaluator() {
+		return evaluator;
+	}
+	
+	/**
+	 * Sets a batch evaluator, which scores all moves of a block together 
+	 * instead of calling the evaluator for each move.  The batch computes the
+	 * heuristic of ColumnBoardEvaluator, so the same moves are picked.
+	 * 
+	 * @param batch - the batch evaluator, with room for MAX_MOVES levels, or
+	 *                null to use the evaluator
+	 */
+	public void setBatchEvaluator(BatchBoardEvaluator batch) {
+		if (batch != null && batch.getCapacity() < MAX_MOVES) {
+			throw new IllegalArgumentException("The batch must hold " + MAX_MOVES + " levels: " + batch.getCapacity());
+		}
+		this.batch = batch;
+		
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+	
+	public BatchBoardEvaluator getBatchEvaluator() {
+		return batch;
+	}
+	
+	/**
+	 * Sets the size of the cache of evaluations, which is looked up by the
+	 * hash of each level before evaluating it.
+	 * 
+	 * @param capacity - the number of cached evaluations, 0 to disable the
+	 *                   cache
+	 */
+	public void setEvaluationCache(int capacity) {
+		cache = capacity > 0 ? new EvaluationCache(capacity) : null;
+	}
+	
+	/**
+	 * Gets the cache of evaluations, for its hit statistics.
+	 * 
+	 * @return - the cache, or null if it is disabled
+	 */
+	public EvaluationCache getEvaluationCache() {
+		return cache;
+	}
+	
+	/**
+	 * Gets the weight vector passed to the evaluator.  The entries for the
+	 * five factors are refreshed from the factor fields before each block.
+	 * 
+	 * @return - the weight vector, indexed by the BoardEvaluator constants
+	 */
+	public double[] getWeights() {
+		
+		// cached evaluations are only valid for the same weights
+		if (cache != null && (weights[BoardEvaluator.HEIGHT] != HEIGHT_FACTOR 
+				|| weights[BoardEvaluator.BALANCE] != BALANCE_FACTOR
+				|| weights[BoardEvaluator.HOLE] != HOLE_FACTOR
+				|| weights[BoardEvaluator.BLOCK] != BLOCK_FACTOR
+				|| weights[BoardEvaluator.LINE] != LINE_FACTOR)) {
+			cache.clear();
+		}
+		
+		weights[BoardEvaluator.HEIGHT] = HEIGHT_FACTOR;
+		weights[BoardEvaluator.BALANCE] = BALANCE_FACTOR;
+		weights[BoardEvaluator.HOLE] = HOLE_FACTOR;
+		weights[BoardEvaluator.BLOCK] = BLOCK_FACTOR;
+		weights[BoardEvaluator.LINE] = LINE_FACTOR;
+		return weights;
+	}
+
+	/**
+	 * Sets how many of the best moves are searched again with the next block.
+	 * Each of these moves is scored by the lines it clears plus the best 
+	 * evaluation of the next block played after it.
+	 * 
+	 * @param topK - the number of moves to search, 0 to only consider the
+	 *               current block
+	 */
+	public void setLookahead(int topK) {
+		lookahead = Math.min(topK, MAX_MOVES);
+	}
+	
+	public int getLookahead() {
+		return lookahead;
+	}
+	
+	/**
+	 * Sets whether the picked moves are taken by the scene as placements, 
+	 * which skips the key presses and the input queue.  The scene moves the
+	 * block with the same collision checks as the key presses, so the game 
+	 * is the same.
+	 * 
+	 * @param direct - true to place blocks directly
+	 */
+	public void setDirectPlacement(boolean direct) {
+		directPlacement = direct;
+		placement = NO_PLACEMENT;
+	}
+	
+	public boolean isDirectPlacement() {
+		return directPlacement;
+	}
+	
+	/**
+	 * Gets the placement waiting for the scene, without taking it.
+	 * 
+	 * @return - the placement, or NO_PLACEMENT
+	 */
+	public int getPlacement() {
+		return placement;
+	}
+	
+	/**
+	 * Sets the placement waiting for the scene, such as one read from a 
+	 * snapshot.
+	 * 
+	 * @param move - the placement, or NO_PLACEMENT
+	 */
+	public void setPlacement(int move) {
+		placement = move;
+	}
+	
+	public int takePlacement() {
+		int move = placement;
+		placement = NO_PLACEMENT;
+		return move;
+	}
+	
+	/**
+	 * Gets the counters of the search, which keep growing until they are
+	 * cleared by the caller.
+	 */
+	public SearchStats getSearchStats() {
+		return stats;
 	}
 
 	/**
 	 * Called when a new begins falling.
 	 */
 	public void newBlock(Block block, Block next, Level level) {
+		long start = System.nanoTime();
 
-		// Move manager generates moves
-		ArrayList<Move> moves = createAllMoves(level, block, next);
-
-		// Object Function evaluates moves
-		evaluateMoves(moves);
+		// Move manager generates and evaluates moves
+		generateMoves(level, block);
 		
 		// Best non-tabu move is picked
-		Move move = getBestMove(moves);
+		int move = lookahead > 0 && next != null ? getBestLookaheadMoveIndex(level, block, next) : getBestMoveIndex();
 		
 		// Move operates on the current solution
-		applyMove(move);
+		placement = NO_PLACEMENT;
+		if (move >= 0 && directPlacement) {
+			placement = moves[move];
+		}
+		else if (move >= 0) {
+			applyMove(moves[move], block);
+		}
+		
+		stats.decisions++;
+		stats.nanos += System.nanoTime() - start;
+	}
+	
+	/**
+	 * Generates and evaluates all moves consisting of rotating a block then
+	 * moving it, in the same order as createAllMoves.  Each move is played on
+	 * a scratch copy of the level, so no objects are allocated.
+	 * 
+	 * @param level - the Tetris level status
+	 * @param block - the block being dropped
+	 * @return - the number of valid moves
+	 */
+	public int generateMoves(Level level, Block block) {
+		double[] weights = getWeights();
+		moveCount = 0;
+		if (batch != null) {
+			batch.clear();
+		}
+		
+		for (int i=-MAX_SHIFT; i<=MAX_SHIFT; i++) {
+			for (int r=0; r<4; r++) {
+				dropPiece(level, block, r, i);
+				
+				// play the move on the scratch level
+				board.copyFrom(level);
+				if (board.addBlockToLevel(piece, true) == false) {
+					continue;
+				}
+				
+				stats.generated++;
+				moves[moveCount] = Move.encode(piece.getType(), piece.getRotation(), piece.getX(), piece.getY());
+				evaluate(board, weights, moveEvaluations, moveCount);
+				moveCount++;
+			}
+		}
+		
+		evaluateBatch(weights, moveEvaluations, moveCount);
+		return moveCount;
+	}
+	
+	/**
+	 * Evaluates a level, using the cached evaluation if the level has been 
+	 * seen before.
+	 * 
+	 * @param level - the level a block has just been added to
+	 * @param weights - the weight vector of the evaluator
+	 * @return - the evaluation
+	 */
+	private double evaluate(Level level, double[] weights) {
+		if (cache == null) {
+			stats.evaluated++;
+			return evaluator.evaluate(level, weights);
+		}
+		
+		long key = level.getHash();
+		int slot = cache.find(key);
+		if (slot >= 0) {
+			return cache.get(slot);
+		}
+		
+		stats.evaluated++;
+		double evaluation = evaluator.evaluate(level, weights);
+		cache.put(key, evaluation);
+		return evaluation;
+	}
+	
+	/**
+	 * Evaluates the level of a move, or adds it to the batch to be evaluated
+	 * by evaluateBatch.
+	 * 
+	 * @param level - the level a block has just been added to
+	 * @param weights - the weight vector of the evaluator
+	 * @param evaluations - the evaluations of the moves
+	 * @param index - the index of the move in evaluations
+	 */
+	private void evaluate(Level level, double[] weights, double[] evaluations, int index) {
+		if (batch == null) {
+			evaluations[index] = evaluate(level, weights);
+			return;
+		}
+		
+		batchIndices[index] = -1;
+		long key = level.getHash();
+		if (cache != null) {
+			int slot = cache.find(key);
+			if (slot >= 0) {
+				evaluations[index] = cache.get(slot);
+				return;
+			}
+			
+			// a level reached by several moves is only added once
+			for (int i=0; i<batch.getCount(); i++) {
+				if (batchKeys[i] == key) {
+					batchIndices[index] = i;
+					return;
+				}
+			}
+		}
+		
+		stats.evaluated++;
+		int i = batch.add(level);
+		batchKeys[i] = key;
+		batchIndices[index] = i;
+	}
+	
+	/**
+	 * Evaluates the levels added to the batch, and copies the evaluations to
+	 * their moves.
+	 * 
+	 * @param weights - the weight vector of the evaluator
+	 * @param evaluations - the evaluations of the moves
+	 * @param count - the number of moves
+	 */
+	private void evaluateBatch(double[] weights, double[] evaluations, int count) {
+		if (batch == null || batch.getCount() == 0) {
+			return;
+		}
+		
+		batch.evaluate(weights, batchEvaluations);
+		for (int i=0; i<count; i++) {
+			if (batchIndices[i] >= 0) {
+				evaluations[i] = batchEvaluations[batchIndices[i]];
+			}
+		}
+		
+		if (cache != null) {
+			for (int i=0; i<batch.getCount(); i++) {
+				cache.put(batchKeys[i], batchEvaluations[i]);
+			}
+		}
+		batch.clear();
+	}
+	
+	/**
+	 * Positions the scratch block where a move would land it.
+	 * 
+	 * @param level - the Tetris level status
+	 * @param block - the block being dropped
+	 * @param rotations - the number of clockwise rotations
+	 * @param shift - the number of spaces to move left (negative) or right
+	 */
+	private void dropPiece(Level level, Block block, int rotations, int shift) {
+		piece.reset(block.getType());
+		piece.setX(block.getX());
+		piece.setY(block.getY());
+		piece.setRotation((block.getRotation() + rotations) % block.getNumRotations());
+		
+		// position the block
+		for (int move=0; move<Math.abs(shift); move++) {
+			if (shift < 0) {
+				piece.moveLeft();
+			}
+			else {
+				piece.moveRight();
+			}
+		}
+		
+		// move the block down until it collides with the level
+		while (level.collision(piece) == false) {
+			piece.drop();
+		}
+	}
+	
+	/**
+	 * Gets a key identifying where the scratch block landed, so that moves 
+	 * reaching the same placement are only searched once.
+	 * 
+	 * @return - a number between 0 and 63
+	 */
+	private int placementKey() {
+		return piece.getRotation()*16 + piece.getX() + 3;
+	}
+	
+	/**
+	 * Searches the best generated moves again with the next block, and 
+	 * returns the index of the move with the best combined score.  Moves 
+	 * that land the block in the same place are only searched once.
+	 * 
+	 * @param level - the Tetris level status
+	 * @param block - the block being dropped
+	 * @param next - the block dropped after it
+	 * @return - the index of the best move, or -1 if no move is possible
+	 */
+	public int getBestLookaheadMoveIndex(Level level, Block block, Block next) {
+		double[] weights = getWeights();
+		
+		// rank the moves by their own evaluation
+		for (int i=0; i<moveCount; i++) {
+			candidates[i] = i;
+		}
+		
+		int searched = 0;
+		long placements = 0;
+		int best = -1;
+		double fitness = -1 * Double.MAX_VALUE;
+		
+		for (int c=0; c<moveCount && searched<lookahead; c++) {
+			
+			// select the next best move
+			int top = c;
+			for (int i=c+1; i<moveCount; i++) {
+				if (moveEvaluations[candidates[i]] > moveEvaluations[candidates[top]]) {
+					top = i;
+				}
+			}
+			int move = candidates[top];
+			candidates[top] = candidates[c];
+			candidates[c] = move;
+			
+			// skip moves that land in an already searched placement
+			Move.place(moves[move], piece);
+			long key = 1L << placementKey();
+			if ((placements & key) != 0) {
+				continue;
+			}
+			placements |= key;
+			searched++;
+			
+			// play the move, then the best move of the next block
+			nextBoard.copyFrom(level);
+			nextBoard.addBlockToLevel(piece, false);
+			int lines = nextBoard.clearFullLines();
+			double evaluation = lines*weights[BoardEvaluator.LINE] + getBestEvaluation(nextBoard, next, weights);
+			
+			if (evaluation > fitness || (evaluation == fitness && move > best)) {
+				best = move;
+				fitness = evaluation;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Finds the evaluation of the best move of a block, without recording 
+	 * the moves.
+	 * 
+	 * @param level - the level to play the block on
+	 * @param block - the block being dropped
+	 * @param weights - the weight vector of the evaluator
+	 * @return - the best evaluation, or -Double.MAX_VALUE if no move is
+	 *           possible
+	 */
+	private double getBestEvaluation(Level level, Block block, double[] weights) {
+		double fitness = -1 * Double.MAX_VALUE;
+		long placements = 0;
+		int count = 0;
+		if (batch != null) {
+			batch.clear();
+		}
+		
+		for (int i=-MAX_SHIFT; i<=MAX_SHIFT; i++) {
+			for (int r=0; r<block.getNumRotations(); r++) {
+				dropPiece(level, block, r, i);
+				
+				long key = 1L << placementKey();
+				if ((placements & key) != 0) {
+					continue;
+				}
+				placements |= key;
+				
+				board.copyFrom(level);
+				if (board.addBlockToLevel(piece, true) == false) {
+					continue;
+				}
+				
+				stats.generated++;
+				evaluate(board, weights, nextEvaluations, count++);
+			}
+		}
+		
+		evaluateBatch(weights, nextEvaluations, count);
+		for (int i=0; i<count; i++) {
+			fitness = Math.max(fitness, nextEvaluations[i]);
+		}
+		return fitness;
+	}
+	
+	/**
+	 * Gets the number of moves found by the last call to generateMoves.
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+	
+	/**
+	 * Gets a generated move.
+	 * 
+	 * @param index - the index of the move, below getMoveCount()
+	 * @return - the placement, encoded by Move.encode
+	 */
+	public int getMove(int index) {
+		return moves[index];
+	}
+	
+	/**
+	 * Gets the evaluation of a generated move.
+	 * 
+	 * @param index - the index of the move, below getMoveCount()
+	 * @return - the evaluation of the level after the move
+	 */
+	public double getMoveEvaluation(int index) {
+		return moveEvaluations[index];
+	}
+	
+	/**
+	 * Returns the index of the best generated move, preferring later moves 
+	 * on ties like getBestMove.
+	 * 
+	 * @return - the index of the best move, or -1 if no move is possible
+	 */
+	public int getBestMoveIndex() {
+		int best = -1;
+		double fitness = -1 * Double.MAX_VALUE;
+		
+		for (int i=0; i<moveCount; i++) {
+			if (moveEvaluations[i] >= fitness) {
+				best = i;
+				fitness = moveEvaluations[i];
+			}
+		}
+		
+		return best;
 	}
 	
 	/**
@@ -113,8 +678,9 @@ public class TabuTetrisAgent implements TetrisAgent {
 	 * @param moves - the moves to evaluate
 	 */
 	public void evaluateMoves(ArrayList<Move> moves) {
+		double[] weights = getWeights();
 		for (Move move : moves) {
-			move.getEvaluation(HEIGHT_FACTOR, BALANCE_FACTOR, HOLE_FACTOR, BLOCK_FACTOR, LINE_FACTOR);
+			move.getEvaluation(evaluator, weights);
 		}
 	}
 	
@@ -128,10 +694,11 @@ public class TabuTetrisAgent implements TetrisAgent {
 	public Move getBestMove(ArrayList<Move> moves) {
 		Move best = null;
 		double fitness = -1 * Double.MAX_VALUE;
+		double[] weights = getWeights();
 				
 		// find the best non tabu move
 		for (Move move : moves) {
-			double evaluation = move.getEvaluation(HEIGHT_FACTOR, BALANCE_FACTOR, HOLE_FACTOR, BLOCK_FACTOR, LINE_FACTOR);			
+			double evaluation = move.getEvaluation(evaluator, weights);			
 			if (evaluation >= fitness) {
 				best = move;
 				fitness = evaluation;
@@ -160,6 +727,33 @@ public class TabuTetrisAgent implements TetrisAgent {
 		}
 	}
 	
+	/**
+	 * Queues the key presses that bring a block from its spawn position to
+	 * an encoded placement.
+	 * 
+	 * @param move - the placement, encoded by Move.encode
+	 * @param block - the block at its spawn position
+	 */
+	public void applyMove(int move, Block block) {
+		int rotations = (Move.getRotation(move) - block.getRotation() + block.getNumRotations()) % block.getNumRotations();
+		applyMove(rotations, Move.getColumn(move) - block.getX());
+	}
+	
+	/**
+	 * Applies a rotation and translation to the solution.
+	 * 
+	 * @param rotations - the number of clockwise rotations
+	 * @param shift - the number of spaces to move left (negative) or right
+	 */
+	public void applyMove(int rotations, int shift) {
+		for (int rotate=0; rotate<rotations; rotate++) {
+			inputMap.addInputEvent(InputMap.EVENT_ROTATE_CW);
+		}
+		for (int move=0; move<Math.abs(shift); move++) {
+			inputMap.addInputEvent(shift < 0 ? InputMap.EVENT_MOVE_LEFT : InputMap.EVENT_MOVE_RIGHT);
+		}
+	}
+	
 	/**
 	 * Called when a block drops.
 	 */
@@ -5,6 +5,9 @@ package sim.tetris;
  */
 public interface TetrisAgent {	
 
+	/** returned by takePlacement when the agent queued key presses */
+	public static final int NO_PLACEMENT = -1;
+
 	/**
 	 * New Tetris block.
 	 * 
@@ -20,4 +23,15 @@ public interface TetrisAgent {
 	 * @param block - dropped block
 	 */	
 	public void blockDropped(Block block);
+	
+	/**
+	 * Takes the placement picked for the current block, for agents that 
+	 * place blocks directly instead of queuing key presses.  The scene 
+	 * calls this once per block, when it would apply the queued input.
+	 * 
+	 * @return - the placement, encoded by Move.encode, or NO_PLACEMENT
+	 */
+	public default int takePlacement() {
+		return NO_PLACEMENT;
+	}
 }